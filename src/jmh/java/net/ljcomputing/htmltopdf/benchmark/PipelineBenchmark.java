@@ -0,0 +1,164 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import net.ljcomputing.htmltopdf.HtmltopdfApplication;
+import net.ljcomputing.htmltopdf.service.Html5ParsingService;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
+import net.ljcomputing.htmltopdf.service.PdfSigningService;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the parse, render and sign stages separately. Run with {@code gradle jmh}; the GC
+ * profiler adds allocation rates to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PipelineBenchmark {
+    /** Number of generated sections: roughly one, fifty and two thousand pages. */
+    @Param({"small", "medium", "large"})
+    private String size;
+
+    private ConfigurableApplicationContext context;
+    private Html5ParsingService html5ParsingService;
+    private HtmlToPdfService htmlToPdfService;
+    private PdfSigningService pdfSigningService;
+
+    private Path workDirectory;
+    private String url;
+    private Document document;
+    private byte[] pdf;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context =
+                new SpringApplicationBuilder(HtmltopdfApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .logStartupInfo(false)
+                        .properties(
+                                "app.parsing.cacheMaxEntries=0",
+                                "logging.level.root=WARN",
+                                "logging.level.net.ljcomputing=WARN")
+                        .run();
+        html5ParsingService = context.getBean(Html5ParsingService.class);
+        htmlToPdfService = context.getBean(HtmlToPdfService.class);
+        pdfSigningService = context.getBean(PdfSigningService.class);
+
+        workDirectory = Files.createTempDirectory("htmltopdf-jmh");
+        Path html = workDirectory.resolve(size + ".html");
+        Files.write(html, sampleHtml(sections(size)).getBytes(StandardCharsets.UTF_8));
+        url = html.toUri().toURL().toExternalForm();
+
+        document = html5ParsingService.html5ParseDocument(url, 6000);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        htmlToPdfService.render(document, url, os);
+        pdf = os.toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public Document parse() throws Exception {
+        return html5ParsingService.html5ParseDocument(url, 6000);
+    }
+
+    @Benchmark
+    public int render() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        htmlToPdfService.render(document, url, os);
+        return os.size();
+    }
+
+    /** Signs in memory, so a failure fails the benchmark and no file is written per call. */
+    @Benchmark
+    public byte[] sign() throws Exception {
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("Benchmark");
+        signature.setSignDate(Calendar.getInstance());
+        return pdfSigningService.signPdf(pdf, signature);
+    }
+
+    private static int sections(String size) {
+        switch (size) {
+            case "small":
+                return 1;
+            case "medium":
+                return 50;
+            default:
+                return 2000;
+        }
+    }
+
+    private static String sampleHtml(int sections) {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"/><style>")
+                .append("h2 { page-break-before: always; } td { border: 1px solid #ccc; }")
+                .append("</style></head><body>");
+
+        for (int section = 1; section <= sections; section++) {
+            html.append("<h2>Section ").append(section).append("</h2>");
+            html.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do ")
+                    .append("eiusmod tempor incididunt ut labore et dolore magna aliqua.</p>");
+            html.append("<table>");
+
+            for (int row = 1; row <= 20; row++) {
+                html.append("<tr><td>Item ")
+                        .append(row)
+                        .append("</td><td>")
+                        .append(section * row)
+                        .append(".00</td></tr>");
+            }
+
+            html.append("</table>");
+        }
+
+        return html.append("</body></html>").toString();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.font.FontRegistry;
+import net.ljcomputing.htmltopdf.service.Html5ParsingService;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
+import net.ljcomputing.htmltopdf.service.PdfSigningService;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+
+/**
+ * Runs the built-in sample through parse, render and sign before the application reports ready,
+ * so openhtmltopdf, the PDFBox font mapper and the BouncyCastle providers are initialized and the
+ * shared caches, including the metrics of the registered fonts, are populated before the first
+ * real request. With app.warmup.exit the JVM exits afterwards, which is how the AppCDS archive is
+ * recorded.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.warmup", name = "enabled", havingValue = "true")
+@Slf4j
+public class WarmupRunner implements ApplicationRunner {
+    private static final String SAMPLE = "static/sample-signing-pdf.html";
+
+    @Autowired private Html5ParsingService html5ParsingService;
+
+    @Autowired private HtmlToPdfService htmlToPdfService;
+
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Autowired private FontRegistry fontRegistry;
+
+    @Autowired private ApplicationContext applicationContext;
+
+    @Value("${app.warmup.iterations:2}")
+    private int iterations;
+
+    @Value("${app.warmup.exit:false}")
+    private boolean exit;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+
+        try {
+            // scans the system fonts, or reads PDFBox's font cache, on first use
+            FontMappers.instance().getFontBoxFont("Helvetica", null);
+            ClassPathResource sample = new ClassPathResource(SAMPLE);
+            byte[] html;
+
+            try (InputStream is = sample.getInputStream()) {
+                html = IOUtils.toByteArray(is);
+            }
+
+            String baseUri = sample.getURL().toExternalForm();
+
+            for (int i = 0; i < iterations; i++) {
+                warmup(html, baseUri);
+            }
+
+            warmupFonts(baseUri);
+
+            log.info("Warm-up finished in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("Warm-up failed, continuing cold: ", e);
+        }
+
+        if (exit) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    /**
+     * Render a line in each registered family, so the font metrics cache holds their measurements
+     * before the first document uses them.
+     *
+     * @param baseUri
+     * @throws IOException
+     */
+    private void warmupFonts(String baseUri) throws IOException {
+        if (fontRegistry.getFamilies().isEmpty()) {
+            return;
+        }
+
+        StringBuilder html = new StringBuilder("<html><body>");
+
+        for (String family : fontRegistry.getFamilies()) {
+            html.append("<p style=\"font-family: '")
+                    .append(family.replace("'", ""))
+                    .append("'\">The quick brown fox <b>jumps</b> <i>over</i> 0123456789</p>");
+        }
+
+        html.append("</body></html>");
+        Document document =
+                html5ParsingService.html5ParseDocument(
+                        ByteBuffer.wrap(html.toString().getBytes(StandardCharsets.UTF_8)), baseUri);
+        htmlToPdfService.render(document, baseUri, new ByteArrayOutputStream());
+    }
+
+    /**
+     * One pass through the pipeline, entirely in memory.
+     *
+     * @param html
+     * @param baseUri
+     * @throws IOException
+     */
+    private void warmup(byte[] html, String baseUri) throws IOException {
+        Document document = html5ParsingService.html5ParseDocument(ByteBuffer.wrap(html), baseUri);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        htmlToPdfService.render(document, baseUri, pdf);
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("Warm-up");
+        signature.setReason("Warm-up");
+        signature.setSignDate(Calendar.getInstance());
+        pdfSigningService.signPdf(pdf.toByteArray(), signature);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.budget;
+
+import java.util.Locale;
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+
+/** A render went over one of the limits of its {@link RenderBudget}. */
+public class BudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /** The limit that was hit. */
+    public enum Limit {
+        WALL_TIME,
+        PAGES,
+        INPUT_BYTES,
+        HEAP;
+
+        /** Name used as a metric tag. */
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private final Limit limit;
+    private final long max;
+    private final long actual;
+
+    public BudgetExceededException(Limit limit, long max, long actual) {
+        super(limit.tag() + " budget of " + max + " exceeded: " + actual);
+        this.limit = limit;
+        this.max = max;
+        this.actual = actual;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getActual() {
+        return actual;
+    }
+}
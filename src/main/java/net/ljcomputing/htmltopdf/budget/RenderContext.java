@@ -0,0 +1,283 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.budget;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.ljcomputing.htmltopdf.budget.BudgetExceededException.Limit;
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+
+/**
+ * Budget accounting and cancellation for one render as it moves between pool threads. Work
+ * enters the context on whichever thread runs it; code along the pipeline calls {@link #check()}
+ * at stage boundaries, resource loads and in long loops, which throws once the render is
+ * cancelled or over budget. Layout itself cannot be stopped, so a render in layout stops at its
+ * next resource load or when layout returns.
+ */
+public class RenderContext {
+    private static final ThreadLocal<RenderContext> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+    private final RenderBudget budget;
+    private final long start = System.nanoTime();
+    private final long deadline;
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+
+    /** Threads inside the context, with their allocation counter on entry. */
+    private final Map<Thread, Long> threads = new HashMap<>();
+
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+    private ScheduledFuture<?> watch;
+
+    public RenderContext(RenderBudget budget) {
+        this.budget = budget;
+        this.deadline =
+                budget.getMaxWallMs() > 0
+                        ? start + TimeUnit.MILLISECONDS.toNanos(budget.getMaxWallMs())
+                        : Long.MAX_VALUE;
+    }
+
+    /** The context of the render running on this thread, or null. */
+    public static RenderContext current() {
+        return CURRENT.get();
+    }
+
+    /** Checkpoint for the render running on this thread, if any. */
+    public static void check() {
+        RenderContext context = CURRENT.get();
+
+        if (context != null) {
+            context.checkpoint();
+        }
+    }
+
+    /**
+     * Count input bytes against the render running on this thread, if any.
+     *
+     * @param bytes
+     */
+    public static void addInput(long bytes) {
+        RenderContext context = CURRENT.get();
+
+        if (context != null) {
+            context.addInputBytes(bytes);
+        }
+    }
+
+    /**
+     * Count laid out pages against the render running on this thread, if any.
+     *
+     * @param count
+     */
+    public static void addRenderedPages(int count) {
+        RenderContext context = CURRENT.get();
+
+        if (context != null) {
+            context.addPages(count);
+        }
+    }
+
+    /**
+     * Run the calling thread inside this context until the returned scope is closed.
+     *
+     * @return the scope; close it in a finally block or try-with-resources
+     */
+    public Scope enter() {
+        RenderContext previous = CURRENT.get();
+
+        if (previous == this) {
+            // already inside, e.g. a split render helping with its own chunks
+            return new Scope(this, null);
+        }
+
+        Thread thread = Thread.currentThread();
+        CURRENT.set(this);
+
+        synchronized (threads) {
+            threads.put(thread, allocatedBytes(thread));
+        }
+
+        Scope scope = new Scope(previous, thread);
+
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            scope.close();
+            throw e;
+        }
+
+        return scope;
+    }
+
+    /**
+     * Throw when the render is cancelled or over its time or heap budget.
+     *
+     * @throws RenderCancelledException
+     * @throws BudgetExceededException
+     */
+    public void checkpoint() {
+        if (cancelled) {
+            throw new RenderCancelledException("render cancelled");
+        }
+
+        if (expired || System.nanoTime() - deadline > 0) {
+            expired = true;
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            throw new BudgetExceededException(Limit.WALL_TIME, budget.getMaxWallMs(), elapsedMs);
+        }
+
+        if (budget.getMaxHeapBytes() > 0) {
+            long heap = allocated();
+
+            if (heap > budget.getMaxHeapBytes()) {
+                throw new BudgetExceededException(Limit.HEAP, budget.getMaxHeapBytes(), heap);
+            }
+        }
+    }
+
+    public void addInputBytes(long bytes) {
+        long total = inputBytes.addAndGet(bytes);
+
+        if (budget.getMaxInputBytes() > 0 && total > budget.getMaxInputBytes()) {
+            throw new BudgetExceededException(
+                    Limit.INPUT_BYTES, budget.getMaxInputBytes(), total);
+        }
+    }
+
+    public void addPages(int count) {
+        long total = pages.addAndGet(count);
+
+        if (budget.getMaxPages() > 0 && total > budget.getMaxPages()) {
+            throw new BudgetExceededException(Limit.PAGES, budget.getMaxPages(), total);
+        }
+    }
+
+    /** Cancel the render, interrupting any thread working on it. */
+    public void cancel() {
+        cancelled = true;
+        interrupt();
+    }
+
+    /** Called by the watchdog when the wall time budget runs out. */
+    void expire() {
+        expired = true;
+        interrupt();
+    }
+
+    /** Whether the render has been cancelled or run out of time. */
+    public boolean isStopped() {
+        return cancelled || expired;
+    }
+
+    public RenderBudget getBudget() {
+        return budget;
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    void setWatch(ScheduledFuture<?> watch) {
+        this.watch = watch;
+    }
+
+    ScheduledFuture<?> getWatch() {
+        return watch;
+    }
+
+    private void interrupt() {
+        synchronized (threads) {
+            for (Thread thread : threads.keySet()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /** Bytes allocated by the render so far, including threads still inside the context. */
+    private long allocated() {
+        long total = allocated.get();
+
+        synchronized (threads) {
+            for (Map.Entry<Thread, Long> entry : threads.entrySet()) {
+                total += allocatedBytes(entry.getKey()) - entry.getValue();
+            }
+        }
+
+        return total;
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        return THREADS == null ? 0L : THREADS.getThreadAllocatedBytes(thread.getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean)
+                                .isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean
+                : null;
+    }
+
+    /** A thread's stay inside a context. */
+    public class Scope implements AutoCloseable {
+        private final RenderContext previous;
+        private final Thread thread;
+
+        Scope(RenderContext previous, Thread thread) {
+            this.previous = previous;
+            this.thread = thread;
+        }
+
+        @Override
+        public void close() {
+            if (thread == null) {
+                return;
+            }
+
+            synchronized (threads) {
+                Long start = threads.remove(thread);
+
+                if (start != null) {
+                    allocated.addAndGet(allocatedBytes(thread) - start);
+                }
+            }
+
+            if (isStopped()) {
+                // do not carry this render's interrupt over to the pool's next task
+                Thread.interrupted();
+            }
+
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.budget;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Interrupts renders that run past their wall time budget, so threads blocked on I/O or waiting
+ * on a lock notice without having to reach a checkpoint first.
+ */
+@Component
+public class RenderWatchdog {
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired private RenderBudget defaultBudget;
+
+    public RenderWatchdog() {
+        scheduler =
+                new ScheduledThreadPoolExecutor(
+                        1,
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "render-watchdog");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Start a render with the configured budget.
+     *
+     * @return the context; pass it to {@link #release(RenderContext)} when the render completes
+     */
+    public RenderContext watch() {
+        return watch(defaultBudget);
+    }
+
+    /**
+     * Start a render.
+     *
+     * @param budget
+     * @return the context; pass it to {@link #release(RenderContext)} when the render completes
+     */
+    public RenderContext watch(RenderBudget budget) {
+        RenderContext context = new RenderContext(budget == null ? defaultBudget : budget);
+
+        if (context.getBudget().getMaxWallMs() > 0) {
+            long delay = context.getDeadline() - System.nanoTime();
+            ScheduledFuture<?> watch =
+                    scheduler.schedule(context::expire, delay, TimeUnit.NANOSECONDS);
+            context.setWatch(watch);
+        }
+
+        return context;
+    }
+
+    /**
+     * Stop watching a finished render.
+     *
+     * @param context
+     */
+    public void release(RenderContext context) {
+        ScheduledFuture<?> watch = context.getWatch();
+
+        if (watch != null) {
+            watch.cancel(false);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * The bytes of a fetched resource and what is needed to tell whether they are still current: the
+ * modification time and size of a local file, or the validators of an HTTP response.
+ */
+@Getter
+public class CachedResource {
+    @Getter(AccessLevel.NONE)
+    private final byte[] bytes;
+
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+
+    /** Modification time of a local file in milliseconds, or -1 for other resources. */
+    private final long fileModified;
+
+    /** Size of a local file, or -1 for other resources. */
+    private final long fileSize;
+
+    /** When the bytes were fetched or last revalidated, in epoch milliseconds. */
+    private final long validatedAt;
+
+    /**
+     * A resource fetched over HTTP or another protocol.
+     *
+     * @param bytes
+     * @param contentType the Content-Type header, or null
+     * @param etag the ETag header, or null
+     * @param lastModified the Last-Modified header, or null
+     */
+    public CachedResource(byte[] bytes, String contentType, String etag, String lastModified) {
+        this(bytes, contentType, etag, lastModified, -1, -1, System.currentTimeMillis());
+    }
+
+    /**
+     * A local file.
+     *
+     * @param bytes
+     * @param fileModified
+     * @param fileSize
+     */
+    public CachedResource(byte[] bytes, long fileModified, long fileSize) {
+        this(bytes, null, null, null, fileModified, fileSize, System.currentTimeMillis());
+    }
+
+    private CachedResource(
+            byte[] bytes,
+            String contentType,
+            String etag,
+            String lastModified,
+            long fileModified,
+            long fileSize,
+            long validatedAt) {
+        this.bytes = bytes;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fileModified = fileModified;
+        this.fileSize = fileSize;
+        this.validatedAt = validatedAt;
+    }
+
+    /** The same bytes, confirmed current now. */
+    public CachedResource revalidated() {
+        return new CachedResource(
+                bytes,
+                contentType,
+                etag,
+                lastModified,
+                fileModified,
+                fileSize,
+                System.currentTimeMillis());
+    }
+
+    public boolean isFile() {
+        return fileModified >= 0;
+    }
+
+    /** The cached bytes; shared, so callers must not modify them. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getSize() {
+        return bytes.length;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.budget.RenderContext;
+import org.apache.pdfbox.io.IOUtils;
+
+/**
+ * Stream factory handed to the renderer for stylesheets, images and fonts. Resources are served
+ * from the shared {@link ResourceCache} and only fetched on a miss or when they are no longer
+ * current: local files are compared by modification time and size on every use, and network
+ * resources past the cache's time to live are revalidated with their ETag or Last-Modified
+ * header. Every load is a checkpoint of the current render's budget, which is the only way to
+ * stop a render during layout.
+ */
+@Slf4j
+public class CachingStreamFactory implements FSStreamFactory {
+    private static final Pattern CHARSET =
+            Pattern.compile("charset\\s*=\\s*\"?([a-zA-Z0-9_.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_CHARSET = Pattern.compile("^@charset\\s+\"([^\"]+)\"");
+
+    private final ResourceCache resourceCache;
+    private final int timeoutMs;
+
+    public CachingStreamFactory(ResourceCache resourceCache, int timeoutMs) {
+        this.resourceCache = resourceCache;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public FSStream getUrl(String url) {
+        RenderContext.check();
+        CachedResource resource;
+
+        try {
+            resource = load(url);
+        } catch (Exception e) {
+            log.warn("Error fetching resource {}: {}", url, e.getMessage());
+            return new CachedStream(null);
+        }
+
+        if (resource != null) {
+            RenderContext.addInput(resource.getSize());
+        }
+
+        return new CachedStream(resource);
+    }
+
+    /**
+     * Get a resource from the cache, fetching or revalidating it when it is not current.
+     *
+     * @param url
+     * @throws IOException
+     */
+    private CachedResource load(String url) throws IOException {
+        CachedResource cached = resourceCache.get(url);
+
+        if (cached != null && isCurrent(url, cached)) {
+            return cached;
+        }
+
+        CachedResource resource = fetch(url, cached);
+
+        if (resource != null) {
+            resourceCache.put(url, resource);
+        }
+
+        return resource;
+    }
+
+    private boolean isCurrent(String url, CachedResource cached) {
+        if (!cached.isFile()) {
+            return resourceCache.isFresh(cached);
+        }
+
+        try {
+            Path path = Paths.get(URI.create(url));
+            return Files.getLastModifiedTime(path).toMillis() == cached.getFileModified()
+                    && Files.size(path) == cached.getFileSize();
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fetch a resource. A stale cached copy is revalidated with a conditional request.
+     *
+     * @param url
+     * @param cached the stale copy, or null
+     * @throws IOException
+     */
+    protected CachedResource fetch(String url, CachedResource cached) throws IOException {
+        if (url.startsWith("file:")) {
+            Path path = Paths.get(URI.create(url));
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            long size = Files.size(path);
+            return new CachedResource(Files.readAllBytes(path), modified, size);
+        }
+
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+
+        if (cached != null && cached.getEtag() != null) {
+            connection.setRequestProperty("If-None-Match", cached.getEtag());
+        }
+
+        if (cached != null && cached.getLastModified() != null) {
+            connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+        }
+
+        if (cached != null
+                && connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode()
+                        == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return cached.revalidated();
+        }
+
+        try (InputStream is = connection.getInputStream();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            IOUtils.copy(is, bytes);
+            return new CachedResource(
+                    bytes.toByteArray(),
+                    connection.getContentType(),
+                    connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"));
+        }
+    }
+
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * The charset of a text resource: from its byte order mark, the Content-Type header or a
+     * leading {@code @charset} rule, in that order. Defaults to UTF-8.
+     *
+     * @param resource
+     */
+    public static Charset charset(CachedResource resource) {
+        byte[] bytes = resource.getBytes();
+
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            return StandardCharsets.UTF_8;
+        }
+
+        if (startsWith(bytes, 0xFE, 0xFF)) {
+            return StandardCharsets.UTF_16BE;
+        }
+
+        if (startsWith(bytes, 0xFF, 0xFE)) {
+            return StandardCharsets.UTF_16LE;
+        }
+
+        Charset charset = null;
+
+        if (resource.getContentType() != null) {
+            charset = forName(CHARSET.matcher(resource.getContentType()));
+        }
+
+        if (charset == null) {
+            int length = Math.min(128, bytes.length);
+            String head = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            charset = forName(CSS_CHARSET.matcher(head));
+        }
+
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    /**
+     * Length of the byte order mark a resource starts with, if any.
+     *
+     * @param bytes
+     */
+    static int bomLength(byte[] bytes) {
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            return 3;
+        }
+
+        return startsWith(bytes, 0xFE, 0xFF) || startsWith(bytes, 0xFF, 0xFE) ? 2 : 0;
+    }
+
+    private static Charset forName(Matcher matcher) {
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // unknown or unsupported charset name, fall through to the next source
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int... bom) {
+        if (bytes.length < bom.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bom.length; i++) {
+            if ((bytes[i] & 0xFF) != bom[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static class CachedStream implements FSStream {
+        private final CachedResource resource;
+
+        CachedStream(CachedResource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return resource == null ? null : new ByteArrayInputStream(resource.getBytes());
+        }
+
+        @Override
+        public Reader getReader() {
+            if (resource == null) {
+                return null;
+            }
+
+            byte[] bytes = resource.getBytes();
+            int bom = bomLength(bytes);
+            return new InputStreamReader(
+                    new ByteArrayInputStream(bytes, bom, bytes.length - bom), charset(resource));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import com.openhtmltopdf.extend.FSCacheEx;
+import com.openhtmltopdf.extend.FSCacheValue;
+import java.util.concurrent.Callable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Application scoped font metrics store shared by every renderer, so fonts are only measured once
+ * per JVM instead of once per document.
+ */
+@Slf4j
+public class FontMetricsCache implements FSCacheEx<String, FSCacheValue> {
+    private final LruCache<String, FSCacheValue> cache;
+
+    public FontMetricsCache(long maxEntries) {
+        cache = new LruCache<>(maxEntries);
+    }
+
+    @Override
+    public void put(String key, FSCacheValue value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public FSCacheValue get(String key, Callable<? extends FSCacheValue> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (Exception e) {
+            log.warn("Error loading font metrics {}: ", key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public FSCacheValue get(String key) {
+        return cache.get(key);
+    }
+
+    public LruCache<String, FSCacheValue> getCache() {
+        return cache;
+    }
+}
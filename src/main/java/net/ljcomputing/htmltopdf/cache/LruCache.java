@@ -0,0 +1,181 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread safe, weight bounded cache with least recently used eviction and hit/miss counters.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Cache bounded by entry count.
+     *
+     * @param maxEntries
+     */
+    public LruCache(long maxEntries) {
+        this(maxEntries, value -> 1L);
+    }
+
+    /**
+     * Cache bounded by the total weight of its values.
+     *
+     * @param maxWeight
+     * @param weigher
+     */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public V get(K key) {
+        V value;
+
+        synchronized (this) {
+            value = entries.get(key);
+        }
+
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Get a value, loading it on a miss. The loader runs outside the cache lock, so two threads
+     * missing the same key at once may both load it; the first value stored wins.
+     *
+     * @param key
+     * @param loader
+     * @throws Exception when the loader fails
+     */
+    public V get(K key, Callable<? extends V> loader) throws Exception {
+        V value = get(key);
+
+        if (value == null) {
+            value = loader.call();
+
+            if (value != null) {
+                value = putIfAbsent(key, value);
+            }
+        }
+
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        V previous = entries.put(key, value);
+
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+
+        weight += weigher.applyAsLong(value);
+        evict();
+    }
+
+    /**
+     * Store a value unless one is already present.
+     *
+     * @param key
+     * @param value
+     * @return the value now cached for the key
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        V existing = entries.get(key);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        put(key, value);
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        V removed = entries.remove(key);
+
+        if (removed != null) {
+            weight -= weigher.applyAsLong(removed);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    /** Drop least recently used entries until the cache is within its bound. */
+    private void evict() {
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rendered PDFs on disk, keyed by a content hash of everything that went into the render. Entries
+ * are written to a temporary file and atomically moved into place, so readers never see a partial
+ * PDF, and concurrent requests for the same key share a single render.
+ */
+@Slf4j
+public class RenderOutputCache {
+    private static final String SUFFIX = ".pdf";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Writes a rendered document. */
+    @FunctionalInterface
+    public interface Writer {
+        void write(OutputStream os) throws IOException;
+    }
+
+    /**
+     * Open a cache directory, picking up entries left by a previous run oldest first.
+     *
+     * @param directory
+     * @param maxBytes
+     */
+    public RenderOutputCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    if (path.getFileName().toString().endsWith(SUFFIX)) {
+                        existing.add(path);
+                    } else {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+
+            existing.sort(Comparator.comparingLong(RenderOutputCache::lastModified));
+
+            synchronized (this) {
+                for (Path path : existing) {
+                    String name = path.getFileName().toString();
+                    long size = Files.size(path);
+                    entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    bytes += size;
+                }
+
+                evict();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening render cache " + directory, e);
+        }
+    }
+
+    /**
+     * Write the document for a key to the target, rendering it only when no cached copy exists.
+     * When another thread is already rendering the same key, wait for it instead.
+     *
+     * @param key content hash of the render inputs
+     * @param writer renders the document on a miss
+     * @param target
+     * @return true when the output came from the cache
+     * @throws IOException
+     */
+    public boolean render(String key, Writer writer, Path target) throws IOException {
+        while (true) {
+            if (copyTo(key, target)) {
+                hits.incrementAndGet();
+                return true;
+            }
+
+            CompletableFuture<Path> mine = new CompletableFuture<>();
+            CompletableFuture<Path> existing = inFlight.putIfAbsent(key, mine);
+
+            if (existing != null) {
+                await(existing);
+                // the shared render may have been evicted already; go round again
+                continue;
+            }
+
+            misses.incrementAndGet();
+
+            try {
+                Path entry = store(key, writer);
+                mine.complete(entry);
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+
+            if (copyTo(key, target)) {
+                return false;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Copy a cached entry to the target.
+     *
+     * @param key
+     * @param target
+     * @return false when there is no entry
+     * @throws IOException
+     */
+    private boolean copyTo(String key, Path target) throws IOException {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return false;
+            }
+        }
+
+        try {
+            Files.copy(entry(key), target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            // evicted between the lookup and the copy
+            return false;
+        }
+    }
+
+    /**
+     * Render into a temporary file and move it into place.
+     *
+     * @param key
+     * @param writer
+     * @throws IOException
+     */
+    private Path store(String key, Writer writer) throws IOException {
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+
+        try {
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                writer.write(os);
+            }
+
+            Path entry = entry(key);
+            Files.move(
+                    temp,
+                    entry,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(entry);
+
+            synchronized (this) {
+                Long previous = entries.put(key, size);
+                bytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+
+            return entry;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Delete least recently used entries until the cache is within its bound. */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+
+            try {
+                Files.deleteIfExists(entry(eldest.getKey()));
+            } catch (IOException e) {
+                log.warn("Error deleting cached render {}: {}", eldest.getKey(), e.getMessage());
+            }
+
+            bytes -= eldest.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void await(CompletableFuture<Path> render) throws IOException {
+        try {
+            render.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+/**
+ * Stylesheets, images and fonts keyed by absolute URL, bounded by total size. Entries fetched over
+ * the network are served without revalidation for {@code ttlMs}; local files are checked against
+ * their modification time and size on every use.
+ */
+public class ResourceCache extends LruCache<String, CachedResource> {
+    private final long ttlMs;
+
+    /**
+     * @param maxBytes
+     * @param ttlMs how long a network resource is used before it is revalidated
+     */
+    public ResourceCache(long maxBytes, long ttlMs) {
+        super(maxBytes, CachedResource::getSize);
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Whether a network resource may be used without asking the server again.
+     *
+     * @param resource
+     */
+    public boolean isFresh(CachedResource resource) {
+        return System.currentTimeMillis() - resource.getValidatedAt() < ttlMs;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.configuration;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfiguration {
+    @Value("${app.conversion.parseThreads:4}")
+    private int parseThreads;
+
+    @Value("${app.conversion.renderThreads:0}")
+    private int renderThreads;
+
+    @Value("${app.conversion.queueCapacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.prefetch.threads:16}")
+    private int prefetchThreads;
+
+    @Value("${app.signing.threads:0}")
+    private int signingThreads;
+
+    @Value("${app.signing.ioThreads:4}")
+    private int signingIoThreads;
+
+    /**
+     * Pool for the parse stage (fetching and parsing the HTML source). Parsing is mostly I/O
+     * bound, so it is sized independently of the render pool.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor parseExecutor() {
+        return boundedExecutor("parse-", parseThreads);
+    }
+
+    /**
+     * Pool for the render stage (layout and PDF output). Rendering is CPU bound; a thread count
+     * of zero or less means one thread per available processor.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor renderExecutor() {
+        int threads = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+        return boundedExecutor("render-", threads);
+    }
+
+    /** Pool for concurrent subresource downloads; per host limits are applied on top of it. */
+    @Bean
+    public ThreadPoolTaskExecutor prefetchExecutor() {
+        return boundedExecutor("prefetch-", prefetchThreads);
+    }
+
+    /**
+     * Pool for the CPU bound part of signing (PDF load, digest and the private key operation). A
+     * thread count of zero or less means one thread per available processor.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor signingExecutor() {
+        int threads =
+                signingThreads > 0 ? signingThreads : Runtime.getRuntime().availableProcessors();
+        return boundedExecutor("sign-", threads);
+    }
+
+    /** Pool for reading unsigned and writing signed documents during bulk signing. */
+    @Bean
+    public ThreadPoolTaskExecutor signingIoExecutor() {
+        return boundedExecutor("sign-io-", signingIoThreads);
+    }
+
+    /**
+     * Unbounded pool for the threads writing merged template output into the parser's pipe. The
+     * writer must never run on the reading thread, so this pool has no queue and never falls back
+     * to the caller; its size is naturally limited by the number of concurrent parses.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor templateMergeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(0);
+        executor.setMaxPoolSize(Integer.MAX_VALUE);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("template-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Create a fixed size executor with a bounded queue. When the queue is full the submitting
+     * thread runs the task itself, which throttles producers instead of rejecting work.
+     *
+     * @param prefix
+     * @param threads
+     */
+    private ThreadPoolTaskExecutor boundedExecutor(String prefix, int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(prefix);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -20,36 +20,34 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.configuration;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.security.KeyStore;
-import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.model.KeystoreDefinition;
+import net.ljcomputing.htmltopdf.service.KeyStoreService;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
-@Slf4j
+@EnableConfigurationProperties(KeystoreProperties.class)
 public class KeystoreConfiguration {
     @Value("${app.password}")
     private String password;
 
-    @Value("${classpath:keystores/keystore.p12}")
-    private File keystoreFile;
+    @Value("${app.keystoreAlias}")
+    private String keystoreAlias;
 
+    @Value("${app.keystoreLocation:classpath:keystores/keystore.p12}")
+    private String keystoreLocation;
+
+    /** The identity used when a signing request does not name one. */
     @Bean
-    public KeyStore keystore() {
-        KeyStore keystore = null;
-
-        try (InputStream is = new FileInputStream(keystoreFile)) {
-            keystore = KeyStore.getInstance("PKCS12");
-            keystore.load(is, password.toCharArray());
-        } catch (Exception e) {
-            log.error("Error loading keystore bean: ", e);
-            throw new RuntimeException("keystore is null");
-        }
-
-        return keystore;
+    public KeystoreDefinition defaultKeystore() {
+        return new KeystoreDefinition(
+                KeyStoreService.DEFAULT_KEYSTORE,
+                keystoreLocation,
+                password,
+                keystoreAlias,
+                null,
+                "PKCS12");
     }
 }
@@ -0,0 +1,63 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import net.ljcomputing.htmltopdf.model.MemoryPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MemoryPolicyConfiguration {
+    @Value("${app.memory.diskThresholdBytes:52428800}")
+    private long diskThresholdBytes;
+
+    @Value("${app.memory.maxMainMemoryBytes:67108864}")
+    private long maxMainMemoryBytes;
+
+    @Value("${app.memory.scratchDirectory:}")
+    private String scratchDirectory;
+
+    @Bean
+    public MemoryPolicy memoryPolicy() {
+        MemoryPolicy memoryPolicy = new MemoryPolicy();
+        memoryPolicy.setDiskThresholdBytes(diskThresholdBytes);
+        memoryPolicy.setMaxMainMemoryBytes(maxMainMemoryBytes);
+
+        if (!scratchDirectory.isEmpty()) {
+            Path scratch = Path.of(scratchDirectory);
+
+            try {
+                Files.createDirectories(scratch);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error creating scratch directory", e);
+            }
+
+            memoryPolicy.setScratchDirectory(scratch);
+        }
+
+        return memoryPolicy;
+    }
+}
@@ -20,20 +20,91 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.configuration;
 
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder.CacheStore;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.ljcomputing.htmltopdf.cache.CachingStreamFactory;
+import net.ljcomputing.htmltopdf.cache.FontMetricsCache;
+import net.ljcomputing.htmltopdf.cache.ResourceCache;
+import net.ljcomputing.htmltopdf.font.FontRegistry;
 import org.jsoup.helper.W3CDom;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 
 @Configuration
 public class OpenHtmlToPdfConfiguration {
+    @Value("${app.cache.resourceMaxBytes:67108864}")
+    private long resourceMaxBytes;
+
+    @Value("${app.cache.fontMetricsMaxEntries:256}")
+    private long fontMetricsMaxEntries;
+
+    @Value("${app.cache.fetchTimeoutMs:6000}")
+    private int fetchTimeoutMs;
+
+    @Value("${app.cache.resourceTtlMs:60000}")
+    private long resourceTtlMs;
+
+    @Value("${app.fonts.locations:}")
+    private List<String> fontLocations;
+
+    /**
+     * Every builder handed out shares the application scoped font metrics and resource caches. The
+     * registered fonts are added once the document to render into is known.
+     */
     @Bean
     @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public PdfRendererBuilder pdfRendererBuilder() {
-        return new PdfRendererBuilder();
+        PdfRendererBuilder builder = new PdfRendererBuilder();
+        builder.useCacheStore(CacheStore.PDF_FONT_METRICS, fontMetricsCache());
+        builder.useHttpStreamImplementation(cachingStreamFactory());
+        builder.useProtocolsStreamImplementation(cachingStreamFactory(), "file");
+        return builder;
+    }
+
+    /**
+     * Fonts from the app.fonts.locations resource patterns, e.g. classpath*:fonts/*.ttf or
+     * file:/opt/fonts/*.ttf, parsed once at startup.
+     *
+     * @throws IOException when a location cannot be searched
+     */
+    @Bean
+    public FontRegistry fontRegistry() throws IOException {
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        List<Resource> resources = new ArrayList<>();
+
+        for (String location : fontLocations) {
+            if (!location.trim().isEmpty()) {
+                resources.addAll(Arrays.asList(resolver.getResources(location.trim())));
+            }
+        }
+
+        return new FontRegistry(resources);
+    }
+
+    @Bean
+    public ResourceCache resourceCache() {
+        return new ResourceCache(resourceMaxBytes, resourceTtlMs);
+    }
+
+    @Bean
+    public FontMetricsCache fontMetricsCache() {
+        return new FontMetricsCache(fontMetricsMaxEntries);
+    }
+
+    @Bean
+    public CachingStreamFactory cachingStreamFactory() {
+        return new CachingStreamFactory(resourceCache(), fetchTimeoutMs);
     }
 
     @Bean
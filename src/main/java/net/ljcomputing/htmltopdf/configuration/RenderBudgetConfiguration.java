@@ -0,0 +1,52 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.configuration;
+
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RenderBudgetConfiguration {
+    @Value("${app.budget.maxWallMs:300000}")
+    private long maxWallMs;
+
+    @Value("${app.budget.maxPages:0}")
+    private int maxPages;
+
+    @Value("${app.budget.maxInputBytes:0}")
+    private long maxInputBytes;
+
+    @Value("${app.budget.maxHeapBytes:0}")
+    private long maxHeapBytes;
+
+    /** Budget for renders that do not bring their own. */
+    @Bean
+    public RenderBudget renderBudget() {
+        RenderBudget budget = new RenderBudget();
+        budget.setMaxWallMs(maxWallMs);
+        budget.setMaxPages(maxPages);
+        budget.setMaxInputBytes(maxInputBytes);
+        budget.setMaxHeapBytes(maxHeapBytes);
+        return budget;
+    }
+}
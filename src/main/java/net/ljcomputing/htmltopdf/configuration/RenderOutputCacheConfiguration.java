@@ -0,0 +1,47 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.configuration;
+
+import java.nio.file.Path;
+import net.ljcomputing.htmltopdf.cache.RenderOutputCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "app.outputCache", name = "enabled", havingValue = "true")
+public class RenderOutputCacheConfiguration {
+    @Value("${app.outputCache.directory:}")
+    private String directory;
+
+    @Value("${app.outputCache.maxBytes:268435456}")
+    private long maxBytes;
+
+    @Bean
+    public RenderOutputCache renderOutputCache() {
+        Path path =
+                directory.isEmpty()
+                        ? Path.of(System.getProperty("java.io.tmpdir"), "htmltopdf-render-cache")
+                        : Path.of(directory);
+        return new RenderOutputCache(path, maxBytes);
+    }
+}
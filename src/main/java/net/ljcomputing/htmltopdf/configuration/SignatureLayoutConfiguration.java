@@ -0,0 +1,62 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.configuration;
+
+import net.ljcomputing.htmltopdf.model.SignatureLayout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SignatureLayoutConfiguration {
+    @Value("${app.signature.pageWidth:612}")
+    private float pageWidth;
+
+    @Value("${app.signature.pageHeight:792}")
+    private float pageHeight;
+
+    @Value("${app.signature.x:50}")
+    private float x;
+
+    @Value("${app.signature.y:650}")
+    private float y;
+
+    @Value("${app.signature.width:200}")
+    private float width;
+
+    @Value("${app.signature.height:50}")
+    private float height;
+
+    @Value("${app.signature.fontSize:8}")
+    private float fontSize;
+
+    @Value("${app.signature.visible:true}")
+    private boolean visible;
+
+    @Value("${app.signature.datePattern:yyyy-MM-dd HH:mm:ss z}")
+    private String datePattern;
+
+    @Bean
+    public SignatureLayout signatureLayout() {
+        return new SignatureLayout(
+                pageWidth, pageHeight, x, y, width, height, fontSize, visible, datePattern);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.font;
+
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder.FontStyle;
+import com.openhtmltopdf.pdfboxout.PDFontSupplier;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.ttf.NameRecord;
+import org.apache.fontbox.ttf.NamingTable;
+import org.apache.fontbox.ttf.OS2WindowsMetricsTable;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.springframework.core.io.Resource;
+
+/**
+ * Fonts read and parsed once at startup. Each document gets a font object built from the already
+ * parsed tables, when layout first asks for it, so no document reads or parses a font file again.
+ * Fonts are always embedded as subsets.
+ *
+ * <p>Faces are grouped by their typographic family and subfamily names (name IDs 16 and 17),
+ * falling back to the legacy names (IDs 1 and 2), so that "Roboto Medium" is registered as weight
+ * 500 of "Roboto" rather than as a family of its own.
+ */
+@Slf4j
+public class FontRegistry {
+    private static final int TYPOGRAPHIC_FAMILY = 16;
+    private static final int TYPOGRAPHIC_SUBFAMILY = 17;
+
+    private final List<RegisteredFont> fonts = new ArrayList<>();
+    private final String fingerprint;
+
+    /**
+     * Parse the given font files. Files that cannot be parsed, and OpenType fonts with CFF
+     * outlines, which PDFBox cannot embed, are skipped with a warning.
+     *
+     * @param resources
+     */
+    public FontRegistry(List<Resource> resources) {
+        MessageDigest digest = sha256();
+
+        for (Resource resource : resources) {
+            try {
+                RegisteredFont font = load(resource, digest);
+
+                if (font != null) {
+                    fonts.add(font);
+                    log.info(
+                            "Registered font {} {} {} from {}",
+                            font.getFamily(),
+                            font.getWeight(),
+                            font.getStyle(),
+                            resource.getFilename());
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skipping font {}: {}", resource.getDescription(), e.toString());
+            }
+        }
+
+        fingerprint = new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    /**
+     * Register every font on a builder, for the document it renders into.
+     *
+     * @param builder
+     * @param document the document passed to {@link PdfRendererBuilder#usePDDocument}
+     */
+    public void registerOn(PdfRendererBuilder builder, PDDocument document) {
+        for (RegisteredFont font : fonts) {
+            builder.useFont(
+                    new ParsedFontSupplier(document, font),
+                    font.getFamily(),
+                    font.getWeight(),
+                    font.getStyle(),
+                    true);
+        }
+    }
+
+    public List<RegisteredFont> getFonts() {
+        return Collections.unmodifiableList(fonts);
+    }
+
+    /**
+     * A hash of every registered face and its bytes, which changes whenever a font that can
+     * affect the rendered output does.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /** Registered family names, in registration order. */
+    public Set<String> getFamilies() {
+        Set<String> families = new LinkedHashSet<>();
+
+        for (RegisteredFont font : fonts) {
+            families.add(font.getFamily());
+        }
+
+        return families;
+    }
+
+    /**
+     * Weight named by a subfamily such as "SemiBold Italic", for fonts without a usable OS/2 weight
+     * class.
+     *
+     * @param subfamily
+     */
+    static int weight(String subfamily) {
+        String name = subfamily == null ? "" : subfamily.toLowerCase(Locale.ROOT);
+        name = name.replaceAll("[ _-]", "");
+
+        if (name.contains("thin") || name.contains("hairline")) {
+            return 100;
+        } else if (name.contains("extralight") || name.contains("ultralight")) {
+            return 200;
+        } else if (name.contains("semibold") || name.contains("demibold")) {
+            return 600;
+        } else if (name.contains("extrabold") || name.contains("ultrabold")) {
+            return 800;
+        } else if (name.contains("black") || name.contains("heavy")) {
+            return 900;
+        } else if (name.contains("light")) {
+            return 300;
+        } else if (name.contains("medium")) {
+            return 500;
+        } else if (name.contains("bold")) {
+            return 700;
+        }
+
+        return 400;
+    }
+
+    /**
+     * Whether a subfamily such as "Bold Italic" names an italic or oblique face.
+     *
+     * @param subfamily
+     */
+    static boolean italic(String subfamily) {
+        String name = subfamily == null ? "" : subfamily.toLowerCase(Locale.ROOT);
+        return name.contains("italic") || name.contains("oblique");
+    }
+
+    /**
+     * Whether font bytes are an OpenType font with CFF outlines, which PDFBox cannot embed.
+     *
+     * @param bytes
+     */
+    static boolean isCff(byte[] bytes) {
+        return bytes.length >= 4
+                && bytes[0] == 'O'
+                && bytes[1] == 'T'
+                && bytes[2] == 'T'
+                && bytes[3] == 'O';
+    }
+
+    private static RegisteredFont load(Resource resource, MessageDigest digest)
+            throws IOException {
+        byte[] bytes;
+
+        try (InputStream is = resource.getInputStream()) {
+            bytes = IOUtils.toByteArray(is);
+        }
+
+        if (isCff(bytes)) {
+            log.warn("Skipping font {}: CFF outlines cannot be embedded", resource.getFilename());
+            return null;
+        }
+
+        TrueTypeFont ttf = new TTFParser().parse(new ByteArrayInputStream(bytes));
+
+        try {
+            NamingTable naming = ttf.getNaming();
+            String family = name(naming, TYPOGRAPHIC_FAMILY);
+            String subfamily = name(naming, TYPOGRAPHIC_SUBFAMILY);
+
+            if (family == null) {
+                family = name(naming, NameRecord.NAME_FONT_FAMILY_NAME);
+                subfamily = name(naming, NameRecord.NAME_FONT_SUB_FAMILY_NAME);
+            } else if (subfamily == null) {
+                subfamily = name(naming, NameRecord.NAME_FONT_SUB_FAMILY_NAME);
+            }
+
+            if (family == null) {
+                throw new IOException("No family name");
+            }
+
+            OS2WindowsMetricsTable os2 = ttf.getOS2Windows();
+            int weightClass = os2 == null ? 0 : os2.getWeightClass();
+            int weight = weightClass >= 100 && weightClass <= 900 ? weightClass : weight(subfamily);
+            boolean italic =
+                    os2 != null
+                            ? (os2.getFsSelection() & 1) != 0 || italic(subfamily)
+                            : (ttf.getHeader().getMacStyle() & 2) != 0 || italic(subfamily);
+            RegisteredFont font =
+                    new RegisteredFont(
+                            family, weight, italic ? FontStyle.ITALIC : FontStyle.NORMAL, ttf);
+            String face = family + ";" + weight + ";" + font.getStyle() + ";";
+            digest.update(face.getBytes(StandardCharsets.UTF_8));
+            digest.update(bytes);
+            return font;
+        } catch (IOException | RuntimeException e) {
+            ttf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A name from the Windows English or, failing that, the Macintosh Roman names of a font.
+     *
+     * @param naming
+     * @param nameId
+     * @return the name, or null when the font has none
+     */
+    private static String name(NamingTable naming, int nameId) {
+        if (naming == null) {
+            return null;
+        }
+
+        String name =
+                naming.getName(
+                        nameId,
+                        NameRecord.PLATFORM_WINDOWS,
+                        NameRecord.ENCODING_WINDOWS_UNICODE_BMP,
+                        NameRecord.LANGUAGE_WINDOWS_EN_US);
+
+        if (name == null) {
+            name =
+                    naming.getName(
+                            nameId,
+                            NameRecord.PLATFORM_MACINTOSH,
+                            NameRecord.ENCODING_MACINTOSH_ROMAN,
+                            NameRecord.LANGUAGE_MACINTOSH_ENGLISH);
+        }
+
+        return name == null || name.trim().isEmpty() ? null : name.trim();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Builds a document's font from the shared parsed font the first time layout needs it. */
+    private static class ParsedFontSupplier extends PDFontSupplier {
+        private final PDDocument document;
+        private final RegisteredFont font;
+        private PDFont loaded;
+
+        ParsedFontSupplier(PDDocument document, RegisteredFont font) {
+            super(null);
+            this.document = document;
+            this.font = font;
+        }
+
+        @Override
+        public PDFont supply() {
+            if (loaded == null) {
+                try {
+                    loaded = PDType0Font.load(document, font.getTrueTypeFont(), true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error loading font " + font.getFamily(), e);
+                }
+            }
+
+            return loaded;
+        }
+    }
+}
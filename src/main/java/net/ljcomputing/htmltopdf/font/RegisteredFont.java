@@ -0,0 +1,44 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.font;
+
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder.FontStyle;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.fontbox.ttf.TrueTypeFont;
+
+/** One face of a registered font family, parsed once and shared by every document. */
+@Getter
+public class RegisteredFont {
+    private final String family;
+    private final int weight;
+    private final FontStyle style;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final TrueTypeFont trueTypeFont;
+
+    RegisteredFont(String family, int weight, FontStyle style, TrueTypeFont trueTypeFont) {
+        this.family = family;
+        this.weight = weight;
+        this.style = style;
+        this.trueTypeFont = trueTypeFont;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers, in-flight gauges, allocation and output size summaries for the conversion and signing
+ * stages. Every stage is recorded as {@code htmltopdf.stage.duration}, tagged with the stage name
+ * and outcome, so the timer counts double as success and failure counters.
+ */
+@Component
+public class PipelineMetrics {
+    public static final String FETCH = "fetch";
+    public static final String PREFETCH = "prefetch";
+    public static final String IMAGES = "images";
+    public static final String PARSE = "parse";
+    public static final String SLIMMING = "slimming";
+    public static final String W3C_CONVERSION = "w3c-conversion";
+    public static final String LAYOUT = "layout";
+    public static final String RENDER = "render";
+    public static final String OPTIMIZE = "optimize";
+    public static final String PDF_LOAD = "pdf-load";
+    public static final String SIGNATURE = "signature";
+    /** Wait for the time stamp authority, when one is configured. */
+    public static final String TIMESTAMP = "timestamp";
+    /** Incremental save of a signed document; includes the nested signature stage. */
+    public static final String INCREMENTAL_SAVE = "incremental-save";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadMXBean =
+                bean instanceof com.sun.management.ThreadMXBean
+                                && ((com.sun.management.ThreadMXBean) bean)
+                                        .isThreadAllocatedMemorySupported()
+                        ? (com.sun.management.ThreadMXBean) bean
+                        : null;
+    }
+
+    /**
+     * Run and record a stage: wall time, outcome, in-flight count and bytes allocated by the
+     * calling thread.
+     *
+     * @param stage
+     * @param work
+     * @throws E when the stage fails
+     */
+    public <T, E extends Exception> T record(String stage, Stage<T, E> work) throws E {
+        AtomicInteger active = inFlight(stage);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        boolean success = false;
+        active.incrementAndGet();
+
+        try {
+            T result = work.call();
+            success = true;
+            return result;
+        } finally {
+            active.decrementAndGet();
+            Timer.builder("htmltopdf.stage.duration")
+                    .tag("stage", stage)
+                    .tag("outcome", success ? "success" : "failure")
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (allocatedBefore >= 0) {
+                DistributionSummary.builder("htmltopdf.stage.allocated")
+                        .baseUnit("bytes")
+                        .tag("stage", stage)
+                        .register(registry)
+                        .record(allocatedBytes() - allocatedBefore);
+            }
+        }
+    }
+
+    /**
+     * Record the size of a produced document.
+     *
+     * @param type pdf or signed
+     * @param bytes
+     */
+    public void recordOutputSize(String type, long bytes) {
+        DistributionSummary.builder("htmltopdf.output.size")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Record what the slimming stage removed from a document.
+     *
+     * @param report
+     */
+    public void recordSlimming(SlimmingReport report) {
+        DistributionSummary.builder("htmltopdf.slimming.removed.bytes")
+                .baseUnit("bytes")
+                .register(registry)
+                .record(report.getBytes());
+        DistributionSummary.builder("htmltopdf.slimming.removed.nodes")
+                .register(registry)
+                .record(report.getNodes());
+    }
+
+    /**
+     * Count a render stopped by its budget or its caller.
+     *
+     * @param reason the budget limit hit, or cancelled
+     */
+    public void recordStopped(String reason) {
+        registry.counter("htmltopdf.render.stopped", "reason", reason).increment();
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    private AtomicInteger inFlight(String stage) {
+        return inFlight.computeIfAbsent(
+                stage,
+                key -> {
+                    AtomicInteger active = new AtomicInteger();
+                    Gauge.builder("htmltopdf.stage.in.flight", active, AtomicInteger::get)
+                            .tag("stage", key)
+                            .register(registry);
+                    return active;
+                });
+    }
+
+    /** Bytes allocated so far by the current thread, or -1 when the JVM cannot tell. */
+    private long allocatedBytes() {
+        return threadMXBean == null
+                ? -1
+                : threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A unit of work that may throw a checked exception.
+     *
+     * @param <T> result type
+     * @param <E> exception type
+     */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class BulkSigningReport {
+    private List<BulkSigningResult> results = new ArrayList<>();
+    private int succeeded;
+    private int failed;
+    private long bytesRead;
+    private long bytesWritten;
+    private long elapsedMs;
+
+    public double getDocumentsPerSecond() {
+        return elapsedMs == 0 ? 0.0 : (succeeded + failed) * 1000.0 / elapsedMs;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedMs == 0 ? 0.0 : bytesRead / 1048576.0 * 1000.0 / elapsedMs;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import java.nio.file.Path;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversionRequest {
+    private String sourceUrl;
+    private Path output;
+    private int timeoutMs = 6000;
+
+    /** Render in parallel chunks split at page breaks and sections, then merge. */
+    private boolean split;
+
+    /** Limits for this render; the configured budget when not set. */
+    private RenderBudget budget;
+
+    public ConversionRequest(String sourceUrl, Path output) {
+        this.sourceUrl = sourceUrl;
+        this.output = output;
+    }
+}
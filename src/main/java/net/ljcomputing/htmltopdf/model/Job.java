@@ -0,0 +1,68 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import lombok.Data;
+import net.ljcomputing.htmltopdf.service.KeyStoreService;
+
+/** A conversion, optionally followed by signing, run through the durable job queue. */
+@Data
+public class Job {
+    private String id;
+    private String sourceUrl;
+    private String output;
+    private int timeoutMs = 6000;
+    private boolean split;
+
+    /** Sign the rendered document once it is written. */
+    private boolean sign;
+
+    private String keystore = KeyStoreService.DEFAULT_KEYSTORE;
+    private String signerName;
+    private String reason;
+    private String location;
+
+    private JobStage stage = JobStage.RENDER;
+
+    /** Claims of the current stage so far, including ones lost to a crash. */
+    private int attempts;
+
+    private String error;
+
+    /** A copy that does not change when this job does. */
+    public Job copy() {
+        Job copy = new Job();
+        copy.setId(id);
+        copy.setSourceUrl(sourceUrl);
+        copy.setOutput(output);
+        copy.setTimeoutMs(timeoutMs);
+        copy.setSplit(split);
+        copy.setSign(sign);
+        copy.setKeystore(keystore);
+        copy.setSignerName(signerName);
+        copy.setReason(reason);
+        copy.setLocation(location);
+        copy.setStage(stage);
+        copy.setAttempts(attempts);
+        copy.setError(error);
+        return copy;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One signing identity: a key store, the alias of the key in it and how to unlock both. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeystoreDefinition {
+    private String name;
+
+    /** Spring resource location, e.g. classpath:keystores/keystore.p12 or file:/etc/pki/x.p12. */
+    private String location;
+
+    private String password;
+    private String alias;
+
+    /** Password of the key entry, when it differs from the key store password. */
+    private String keyPassword;
+
+    private String type = "PKCS12";
+
+    public char[] keyPasswordChars() {
+        return (keyPassword == null || keyPassword.isEmpty() ? password : keyPassword)
+                .toCharArray();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import java.nio.file.Path;
+import lombok.Data;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+/**
+ * Where PDFBox keeps document buffers. Small documents stay on the heap; larger ones, and
+ * documents of unknown size, use at most {@code maxMainMemoryBytes} of heap and spill the rest to
+ * a scratch file.
+ */
+@Data
+public class MemoryPolicy {
+    private long diskThresholdBytes;
+    private long maxMainMemoryBytes;
+    private Path scratchDirectory;
+
+    /**
+     * Memory setting for a document of a known size.
+     *
+     * @param sizeBytes document size, or a negative value when unknown
+     */
+    public MemoryUsageSetting forSize(long sizeBytes) {
+        if (sizeBytes >= 0 && sizeBytes <= diskThresholdBytes) {
+            return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+
+        MemoryUsageSetting setting = MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+
+        if (scratchDirectory != null) {
+            setting.setTempDir(scratchDirectory.toFile());
+        }
+
+        return setting;
+    }
+
+    /** Memory setting for a document being rendered, whose final size is not known. */
+    public MemoryUsageSetting forRendering() {
+        return forSize(-1);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import lombok.Data;
+
+/** What the PDF optimizer changed in one document. */
+@Data
+public class OptimizationReport {
+    private int duplicateStreams;
+    private int unusedResources;
+    private int compressedStreams;
+
+    /** Size before optimizing, when the document came in as bytes. */
+    private long bytesBefore;
+
+    private long bytesAfter;
+
+    /**
+     * Bytes saved: measured when both sizes are known, otherwise estimated from the stream data
+     * dropped and compressed.
+     */
+    private long bytesSaved;
+}
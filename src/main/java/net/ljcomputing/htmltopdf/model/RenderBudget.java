@@ -0,0 +1,45 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import lombok.Data;
+
+/** Limits for a single render or signature; zero or less means unlimited. */
+@Data
+public class RenderBudget {
+    /** Wall time from submission, including time spent queued between stages. */
+    private long maxWallMs;
+
+    private int maxPages;
+
+    /** Source document plus every subresource it loads. */
+    private long maxInputBytes;
+
+    /**
+     * Bytes allocated by the threads working on the render; an upper bound on the heap it holds,
+     * as garbage counts too.
+     */
+    private long maxHeapBytes;
+
+    public static RenderBudget unlimited() {
+        return new RenderBudget();
+    }
+}
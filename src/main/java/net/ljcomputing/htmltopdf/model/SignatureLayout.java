@@ -0,0 +1,245 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.model;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import lombok.Getter;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+
+/**
+ * Signature page and field layout, computed once and stamped onto each signed document. PDF
+ * objects belong to a single document, so only the geometry, font and text layout are shared; the
+ * page, field and appearance stream are created per document from them.
+ */
+@Getter
+public class SignatureLayout {
+    private static final PDType1Font FONT = PDType1Font.HELVETICA;
+    private static final String DEFAULT_APPEARANCE = "/Helv 0 Tf 0 g";
+    private static final float PADDING = 4;
+
+    private final float pageWidth;
+    private final float pageHeight;
+    private final float x;
+    private final float y;
+    private final float width;
+    private final float height;
+    private final float fontSize;
+    private final float leading;
+    private final boolean visible;
+    private final DateTimeFormatter dateFormatter;
+
+    public SignatureLayout(
+            float pageWidth,
+            float pageHeight,
+            float x,
+            float y,
+            float width,
+            float height,
+            float fontSize,
+            boolean visible,
+            String datePattern) {
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.fontSize = fontSize;
+        this.leading = fontSize * 1.25f;
+        this.visible = visible;
+        this.dateFormatter = DateTimeFormatter.ofPattern(datePattern);
+    }
+
+    /**
+     * Add the signature page and signature field to a document. An existing AcroForm is kept with
+     * its fields, so signatures already on a countersigned document stay listed; only missing
+     * default resources and appearance are filled in.
+     *
+     * @param document
+     * @param signature
+     * @throws IOException
+     */
+    public void apply(PDDocument document, PDSignature signature) throws IOException {
+        PDPage signaturePage = new PDPage(new PDRectangle(pageWidth, pageHeight));
+        PDDocumentCatalog catalog = document.getDocumentCatalog();
+        PDAcroForm acroForm = catalog.getAcroForm();
+
+        if (acroForm == null) {
+            acroForm = new PDAcroForm(document);
+            catalog.setAcroForm(acroForm);
+        }
+
+        COSDictionary form = acroForm.getCOSObject();
+
+        if (!(form.getDictionaryObject(COSName.FIELDS) instanceof COSArray)) {
+            form.setItem(COSName.FIELDS, new COSArray());
+        }
+
+        if (acroForm.getDefaultResources() == null) {
+            acroForm.setDefaultResources(new PDResources());
+        }
+
+        if (acroForm.getDefaultAppearance().isEmpty()) {
+            acroForm.setDefaultAppearance(DEFAULT_APPEARANCE);
+        }
+
+        PDResources defaults = acroForm.getDefaultResources();
+
+        if (defaults.getFont(COSName.HELV) == null) {
+            defaults.put(COSName.HELV, FONT);
+            defaults.getCOSObject().setNeedToBeUpdated(true);
+        }
+
+        PDSignatureField signatureField = new PDSignatureField(acroForm);
+        signatureField.getCOSObject().setItem(COSName.V, signature);
+        PDAnnotationWidget widget = signatureField.getWidgets().get(0);
+        widget.setRectangle(new PDRectangle(x, y, width, height));
+        widget.setPage(signaturePage);
+        widget.setPrinted(true);
+
+        if (visible) {
+            widget.setAppearance(appearance(document, signature));
+        }
+
+        signaturePage.getAnnotations().add(widget);
+        acroForm.getFields().add(signatureField);
+
+        document.addPage(signaturePage);
+
+        // an incremental update only writes the objects marked as changed
+        catalog.getCOSObject().setNeedToBeUpdated(true);
+        form.setNeedToBeUpdated(true);
+        ((COSArray) form.getDictionaryObject(COSName.FIELDS)).setNeedToBeUpdated(true);
+        COSDictionary pages = catalog.getPages().getCOSObject();
+        pages.setNeedToBeUpdated(true);
+
+        if (pages.getDictionaryObject(COSName.KIDS) instanceof COSArray) {
+            ((COSArray) pages.getDictionaryObject(COSName.KIDS)).setNeedToBeUpdated(true);
+        }
+    }
+
+    /**
+     * The visible appearance: a border with the signer name, reason and signing date.
+     *
+     * @param document
+     * @param signature
+     * @throws IOException
+     */
+    private PDAppearanceDictionary appearance(PDDocument document, PDSignature signature)
+            throws IOException {
+        PDResources resources = new PDResources();
+        resources.put(COSName.HELV, FONT);
+        PDAppearanceStream stream = new PDAppearanceStream(document);
+        stream.setBBox(new PDRectangle(width, height));
+        stream.setResources(resources);
+
+        try (PDPageContentStream cs = new PDPageContentStream(document, stream)) {
+            cs.setLineWidth(0.5f);
+            cs.addRect(0.5f, 0.5f, width - 1, height - 1);
+            cs.stroke();
+
+            cs.beginText();
+            cs.setFont(FONT, fontSize);
+            cs.setLeading(leading);
+            cs.newLineAtOffset(PADDING, height - PADDING - fontSize);
+
+            for (String line : lines(signature)) {
+                cs.showText(encodable(line));
+                cs.newLine();
+            }
+
+            cs.endText();
+        }
+
+        PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+        appearance.setNormalAppearance(stream);
+        return appearance;
+    }
+
+    private List<String> lines(PDSignature signature) {
+        List<String> lines = new ArrayList<>(3);
+
+        if (signature.getName() != null) {
+            lines.add("Digitally signed by " + signature.getName());
+        }
+
+        if (signature.getReason() != null) {
+            lines.add("Reason: " + signature.getReason());
+        }
+
+        Calendar signDate = signature.getSignDate();
+
+        if (signDate != null) {
+            ZonedDateTime date =
+                    signDate.toInstant().atZone(signDate.getTimeZone().toZoneId());
+            lines.add("Date: " + dateFormatter.format(date));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Replace characters the standard Helvetica font cannot encode.
+     *
+     * @param text
+     */
+    private static String encodable(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c >= ' ' && c < 127) {
+                sb.append(c);
+                continue;
+            }
+
+            try {
+                FONT.encode(String.valueOf(c));
+                sb.append(c);
+            } catch (IllegalArgumentException | IOException e) {
+                sb.append('?');
+            }
+        }
+
+        return sb.toString();
+    }
+}
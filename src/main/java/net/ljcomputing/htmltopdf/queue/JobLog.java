@@ -0,0 +1,258 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.queue;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.model.Job;
+import net.ljcomputing.htmltopdf.model.JobStage;
+
+/**
+ * Append-only JSON lines log of job state changes. The current state of every job is the replay
+ * of the log; a record is written, and forced to disk when configured, before it is applied, so
+ * nothing a caller has been told about is lost in a crash. A line torn by a crash is cut off on
+ * open.
+ */
+@Slf4j
+public class JobLog implements Closeable {
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path file;
+    private final boolean fsync;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private FileChannel channel;
+    private long records;
+
+    /**
+     * Open a log, replaying what is already in it.
+     *
+     * @param file
+     * @param fsync force every append to disk
+     * @throws IOException
+     */
+    public JobLog(Path file, boolean fsync) throws IOException {
+        this.file = file;
+        this.fsync = fsync;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        long valid = Files.exists(file) ? replay() : 0L;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        if (channel.size() > valid) {
+            log.warn("Truncating {} torn bytes from {}", channel.size() - valid, file);
+            channel.truncate(valid);
+        }
+
+        channel.position(valid);
+    }
+
+    /**
+     * Write records in one go and apply them.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    public synchronized void append(List<JobRecord> batch) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+
+        for (JobRecord record : batch) {
+            MAPPER.writeValue(lines, record);
+            lines.write('\n');
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        if (fsync) {
+            channel.force(false);
+        }
+
+        for (JobRecord record : batch) {
+            apply(record);
+        }
+    }
+
+    public void append(JobRecord record) throws IOException {
+        append(Collections.singletonList(record));
+    }
+
+    public synchronized Job get(String id) {
+        return jobs.get(id);
+    }
+
+    /** Jobs not yet done or failed, in submission order. */
+    public synchronized List<Job> live() {
+        List<Job> live = new ArrayList<>();
+
+        for (Job job : jobs.values()) {
+            if (!job.getStage().isFinished()) {
+                live.add(job);
+            }
+        }
+
+        return live;
+    }
+
+    /** Records in the log since it was last compacted. */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Rewrite the log as one record per live job. Finished jobs are forgotten.
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        List<Job> live = live();
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+
+        try (FileChannel out =
+                FileChannel.open(
+                        temp,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+
+            for (Job job : live) {
+                MAPPER.writeValue(lines, JobRecord.submit(job));
+                lines.write('\n');
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            out.force(false);
+        }
+
+        channel.close();
+        Files.move(
+                temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.debug("compacted {} records into {} for {}", records, live.size(), file);
+
+        jobs.values().removeIf(job -> job.getStage().isFinished());
+        records = live.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Apply every complete line in the file.
+     *
+     * @return the length of the valid prefix
+     * @throws IOException
+     */
+    private long replay() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int start = 0;
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+
+            try {
+                if (!line.isEmpty()) {
+                    apply(MAPPER.readValue(line, JobRecord.class));
+                }
+            } catch (IOException e) {
+                if (i < bytes.length - 1) {
+                    throw new IOException("Corrupt record at byte " + start + " of " + file, e);
+                }
+
+                // the last write was torn by a crash
+                log.warn("Unreadable record at byte {} of {}: {}", start, file, e.getMessage());
+                return start;
+            }
+
+            start = i + 1;
+        }
+
+        return start;
+    }
+
+    private void apply(JobRecord record) {
+        records++;
+
+        if (record.getType() == JobRecord.Type.SUBMIT) {
+            jobs.put(record.getJob().getId(), record.getJob());
+            return;
+        }
+
+        for (String id : record.getJobIds()) {
+            Job job = jobs.get(id);
+
+            if (job == null) {
+                continue;
+            }
+
+            switch (record.getType()) {
+                case CLAIM:
+                    job.setAttempts(job.getAttempts() + 1);
+                    break;
+                case CHECKPOINT:
+                    job.setStage(record.getStage());
+                    job.setAttempts(0);
+                    job.setError(null);
+                    break;
+                case FAIL:
+                    job.setStage(JobStage.FAILED);
+                    job.setError(record.getError());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.queue;
+
+import java.util.List;
+import lombok.Data;
+import net.ljcomputing.htmltopdf.model.Job;
+import net.ljcomputing.htmltopdf.model.JobStage;
+
+/** One line of the job log. */
+@Data
+public class JobRecord {
+    public enum Type {
+        /** A new job, or a live job's state carried over by compaction. */
+        SUBMIT,
+        /** A batch of jobs handed to a stage's workers. */
+        CLAIM,
+        /** A stage finished; the job moves on to the recorded stage. */
+        CHECKPOINT,
+        /** The job ran out of attempts. */
+        FAIL
+    }
+
+    private Type type;
+    private Job job;
+    private List<String> jobIds;
+    private JobStage stage;
+    private String error;
+    private long time = System.currentTimeMillis();
+
+    public static JobRecord submit(Job job) {
+        JobRecord record = new JobRecord();
+        record.setType(Type.SUBMIT);
+        record.setJob(job);
+        return record;
+    }
+
+    public static JobRecord claim(JobStage stage, List<String> jobIds) {
+        JobRecord record = new JobRecord();
+        record.setType(Type.CLAIM);
+        record.setStage(stage);
+        record.setJobIds(jobIds);
+        return record;
+    }
+
+    public static JobRecord checkpoint(String jobId, JobStage next) {
+        JobRecord record = new JobRecord();
+        record.setType(Type.CHECKPOINT);
+        record.setStage(next);
+        record.setJobIds(List.of(jobId));
+        return record;
+    }
+
+    public static JobRecord fail(String jobId, String error) {
+        JobRecord record = new JobRecord();
+        record.setType(Type.FAIL);
+        record.setJobIds(List.of(jobId));
+        record.setError(error);
+        return record;
+    }
+}
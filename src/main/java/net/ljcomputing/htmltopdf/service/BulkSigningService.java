@@ -0,0 +1,71 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import net.ljcomputing.htmltopdf.model.BulkSigningReport;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+
+public interface BulkSigningService {
+    /**
+     * Sign a list of documents concurrently. Each signed copy is written beside its source with a
+     * -signed suffix; a failure is reported per document and does not stop the batch.
+     *
+     * @param pdfs
+     * @param signatureSupplier creates a fresh signature dictionary for each document
+     */
+    BulkSigningReport signAll(List<Path> pdfs, Supplier<PDSignature> signatureSupplier);
+
+    /**
+     * Sign a list of documents concurrently with a registered signing identity.
+     *
+     * @param pdfs
+     * @param signatureSupplier creates a fresh signature dictionary for each document
+     * @param keystore registered key store name
+     */
+    BulkSigningReport signAll(
+            List<Path> pdfs, Supplier<PDSignature> signatureSupplier, String keystore);
+
+    /**
+     * Sign every unsigned PDF in a directory.
+     *
+     * @param directory
+     * @param signatureSupplier creates a fresh signature dictionary for each document
+     * @throws IOException when the directory cannot be listed
+     */
+    BulkSigningReport signDirectory(Path directory, Supplier<PDSignature> signatureSupplier)
+            throws IOException;
+
+    /**
+     * Sign every unsigned PDF in a directory with a registered signing identity.
+     *
+     * @param directory
+     * @param signatureSupplier creates a fresh signature dictionary for each document
+     * @param keystore registered key store name
+     * @throws IOException when the directory cannot be listed
+     */
+    BulkSigningReport signDirectory(
+            Path directory, Supplier<PDSignature> signatureSupplier, String keystore)
+            throws IOException;
+}
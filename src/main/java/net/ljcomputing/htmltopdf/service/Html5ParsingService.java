@@ -21,6 +21,8 @@ James G Willmore - LJ Computing - (C) 2023
 package net.ljcomputing.htmltopdf.service;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import org.w3c.dom.Document;
 
 public interface Html5ParsingService {
@@ -34,4 +36,24 @@ public interface Html5ParsingService {
      * @throws IOException
      */
     Document html5ParseDocument(String urlStr, int timeoutMs) throws IOException;
+
+    /**
+     * Parse an HTML 5 Document from a local file. Large files are memory mapped and the charset is
+     * taken from the byte order mark or a meta tag, defaulting to UTF-8.
+     *
+     * @param path
+     * @param baseUri used to resolve relative links
+     * @throws IOException
+     */
+    Document html5ParseDocument(Path path, String baseUri) throws IOException;
+
+    /**
+     * Parse an HTML 5 Document from the remaining bytes of a buffer, detecting the charset as for
+     * files. The buffer's position is not changed.
+     *
+     * @param buffer
+     * @param baseUri used to resolve relative links
+     * @throws IOException
+     */
+    Document html5ParseDocument(ByteBuffer buffer, String baseUri) throws IOException;
 }
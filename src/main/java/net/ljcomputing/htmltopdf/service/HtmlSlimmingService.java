@@ -0,0 +1,35 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
+import org.jsoup.nodes.Document;
+
+public interface HtmlSlimmingService {
+    /**
+     * Strip what layout cannot use from a parsed page, in place: scripts, hidden elements,
+     * comments, event handler attributes, rules of {@code <style>} elements no element matches and
+     * oversized inline images. Linked stylesheets are not fetched here and keep all their rules.
+     *
+     * @param document
+     */
+    SlimmingReport slim(Document document);
+}
@@ -0,0 +1,86 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import net.ljcomputing.htmltopdf.model.ConversionRequest;
+import org.w3c.dom.Document;
+
+public interface HtmlToPdfService {
+    /**
+     * Convert a single document. The source is parsed on the parse pool and rendered on the
+     * render pool.
+     *
+     * @param request
+     * @return a future completing with the written PDF path
+     */
+    CompletableFuture<Path> convert(ConversionRequest request);
+
+    /**
+     * Convert a batch of documents concurrently.
+     *
+     * @param requests
+     * @return one future per request, in request order
+     */
+    List<CompletableFuture<Path>> convertAll(List<ConversionRequest> requests);
+
+    /**
+     * Merge a template with a data model and convert the result. The merge and parse run on the
+     * parse pool and the layout on the render pool.
+     *
+     * @param templateName
+     * @param model
+     * @param baseUri used to resolve relative links in the merged output
+     * @param output
+     * @return a future completing with the written PDF path
+     */
+    CompletableFuture<Path> convertTemplate(
+            String templateName, Object model, String baseUri, Path output);
+
+    /**
+     * Render an already parsed document to a stream on the calling thread.
+     *
+     * @param document
+     * @param baseUri
+     * @param os
+     * @throws IOException
+     */
+    void render(Document document, String baseUri, OutputStream os) throws IOException;
+
+    /**
+     * Render a long document by splitting it at page break and section boundaries, laying the
+     * chunks out in parallel and merging them into one PDF. Internal links and bookmarks are
+     * resolved across chunks, and the optional stamped page numbers run across the whole document.
+     * CSS page counters would restart in every chunk, so a document using them is rendered in one
+     * piece unless page numbers are stamped, in which case the stamp replaces them. Counters in a
+     * linked stylesheet always keep the document in one piece.
+     *
+     * @param document
+     * @param baseUri
+     * @param os
+     * @throws IOException
+     */
+    void renderSplit(Document document, String baseUri, OutputStream os) throws IOException;
+}
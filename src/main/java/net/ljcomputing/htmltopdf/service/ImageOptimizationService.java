@@ -0,0 +1,36 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import net.ljcomputing.htmltopdf.model.ImageReport;
+import org.w3c.dom.Document;
+
+public interface ImageOptimizationService {
+    /**
+     * Downsample the JPEG and PNG images of a parsed document to the configured resolution for
+     * their displayed size and recompress them, replacing each reference with the smaller image
+     * as a data URI. Images that would not shrink are left as they are.
+     *
+     * @param document
+     * @param baseUri used to resolve relative references
+     */
+    ImageReport optimize(Document document, String baseUri);
+}
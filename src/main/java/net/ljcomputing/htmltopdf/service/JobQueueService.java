@@ -0,0 +1,63 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import java.util.List;
+import net.ljcomputing.htmltopdf.model.Job;
+
+public interface JobQueueService {
+    /**
+     * Queue a job. It is on disk when this returns and survives a restart.
+     *
+     * @param job
+     * @return the job id
+     * @throws IOException when the job log cannot be written
+     */
+    String submit(Job job) throws IOException;
+
+    /**
+     * Queue several jobs with a single log write.
+     *
+     * @param jobs
+     * @return the job ids, in order
+     * @throws IOException when the job log cannot be written
+     */
+    List<String> submitAll(List<Job> jobs) throws IOException;
+
+    /**
+     * Current state of a job; finished jobs are forgotten when the log is compacted.
+     *
+     * @param id
+     * @return the job, or null when unknown
+     */
+    Job getJob(String id);
+
+    /** Number of jobs not yet done or failed. */
+    int pending();
+
+    /**
+     * Rewrite the job log without the records of finished jobs.
+     *
+     * @throws IOException
+     */
+    void compact() throws IOException;
+}
@@ -20,8 +20,37 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.service;
 
+import java.util.Set;
 import net.ljcomputing.htmltopdf.model.SignatureCredentials;
 
 public interface KeyStoreService {
+    /** Name of the key store configured by app.keystoreAlias and app.password. */
+    String DEFAULT_KEYSTORE = "default";
+
+    /**
+     * Retrieve the signing credentials of the default key store. The unlocked credentials are
+     * cached and shared between callers, so they must not be modified.
+     */
     SignatureCredentials retrieveCredentials();
+
+    /**
+     * Retrieve the signing credentials of a registered key store, loading it on first use.
+     *
+     * @param keystore registered name
+     * @throws IllegalArgumentException when no key store has that name
+     */
+    SignatureCredentials retrieveCredentials(String keystore);
+
+    /** Names of the registered key stores. */
+    Set<String> keystores();
+
+    /** Discard all cached credentials; the next retrieval unlocks the keys again. */
+    void invalidate();
+
+    /**
+     * Discard the cached credentials of one key store.
+     *
+     * @param keystore
+     */
+    void invalidate(String keystore);
 }
@@ -0,0 +1,48 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import net.ljcomputing.htmltopdf.model.OptimizationReport;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+public interface PdfOptimizationService {
+    /**
+     * Optimize a document in place: identical image and form streams are merged, XObjects and
+     * fonts no content stream uses are dropped from page resources and unfiltered streams are
+     * Flate compressed. The changes only reach the output with a full save.
+     *
+     * @param document
+     * @throws IOException
+     */
+    OptimizationReport optimize(PDDocument document) throws IOException;
+
+    /**
+     * Optimize a serialized document. A signed document is copied through unchanged, as the full
+     * save would invalidate its signatures.
+     *
+     * @param pdf
+     * @param optimized receives the optimized document; not closed
+     * @throws IOException
+     */
+    OptimizationReport optimize(byte[] pdf, OutputStream optimized) throws IOException;
+}
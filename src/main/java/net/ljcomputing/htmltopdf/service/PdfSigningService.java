@@ -20,9 +20,81 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 
 public interface PdfSigningService {
     void signPdf(Path pdf, PDSignature signature);
+
+    /**
+     * Sign a PDF file with a registered signing identity, writing a -signed sibling.
+     *
+     * @param pdf
+     * @param signature
+     * @param keystore registered key store name
+     */
+    void signPdf(Path pdf, PDSignature signature, String keystore);
+
+    /**
+     * Sign a PDF file with a registered signing identity, writing the signed document to a stream,
+     * which is not closed. The file is loaded with the memory policy for its size, so large
+     * documents spill to scratch files instead of the heap.
+     *
+     * @param pdf
+     * @param signedPdf
+     * @param signature
+     * @param keystore registered key store name
+     * @throws IOException
+     */
+    void signPdf(Path pdf, OutputStream signedPdf, PDSignature signature, String keystore)
+            throws IOException;
+
+    /**
+     * Sign a PDF read from a stream, writing the signed document to another stream. Neither
+     * stream is closed.
+     *
+     * @param pdf
+     * @param signedPdf
+     * @param signature
+     * @throws IOException
+     */
+    void signPdf(InputStream pdf, OutputStream signedPdf, PDSignature signature)
+            throws IOException;
+
+    /**
+     * As {@link #signPdf(InputStream, OutputStream, PDSignature)}, with a registered signing
+     * identity.
+     *
+     * @param pdf
+     * @param signedPdf
+     * @param signature
+     * @param keystore registered key store name
+     * @throws IOException
+     */
+    void signPdf(InputStream pdf, OutputStream signedPdf, PDSignature signature, String keystore)
+            throws IOException;
+
+    /**
+     * Sign an in memory PDF.
+     *
+     * @param pdf
+     * @param signature
+     * @return the signed document
+     * @throws IOException
+     */
+    byte[] signPdf(byte[] pdf, PDSignature signature) throws IOException;
+
+    /**
+     * Sign an in memory PDF with a registered signing identity.
+     *
+     * @param pdf
+     * @param signature
+     * @param keystore registered key store name
+     * @return the signed document
+     * @throws IOException
+     */
+    byte[] signPdf(byte[] pdf, PDSignature signature, String keystore) throws IOException;
 }
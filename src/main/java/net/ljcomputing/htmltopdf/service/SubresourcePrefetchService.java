@@ -0,0 +1,38 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import net.ljcomputing.htmltopdf.model.PrefetchReport;
+import org.w3c.dom.Document;
+
+public interface SubresourcePrefetchService {
+    /**
+     * Download the images, stylesheets and stylesheet references of a parsed document into the
+     * shared resource cache, concurrently and within the configured deadline, so the renderer reads
+     * them from memory instead of fetching them one by one during layout. The url() and @import
+     * references inside fetched stylesheets are followed in further rounds until nothing new turns
+     * up or the deadline passes.
+     *
+     * @param document
+     * @param baseUri used to resolve relative references
+     */
+    PrefetchReport prefetch(Document document, String baseUri);
+}
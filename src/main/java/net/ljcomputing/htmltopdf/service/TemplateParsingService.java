@@ -0,0 +1,39 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import org.w3c.dom.Document;
+
+public interface TemplateParsingService {
+    /**
+     * Merge a FreeMarker template with a data model and parse the output as an HTML 5 Document.
+     * The merged output is streamed into the parser without an intermediate String or file.
+     *
+     * @param templateName template name, relative to the template loader path; the configured
+     *     suffix is appended when the name has no extension
+     * @param model
+     * @param baseUri used to resolve relative links in the merged output
+     * @throws IOException
+     */
+    Document templateParseDocument(String templateName, Object model, String baseUri)
+            throws IOException;
+}
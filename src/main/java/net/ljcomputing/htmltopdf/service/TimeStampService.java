@@ -0,0 +1,55 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.tsp.TimeStampToken;
+
+public interface TimeStampService {
+    /** Whether a time stamp authority is configured. */
+    boolean isEnabled();
+
+    /**
+     * Request an RFC 3161 time stamp over the SHA-256 of some data. Concurrent requests each make
+     * their own round trip without blocking the caller.
+     *
+     * @param data
+     */
+    CompletableFuture<TimeStampToken> timestamp(byte[] data);
+
+    /**
+     * Add a signature time stamp to every signer of a CMS signature, as an unsigned attribute.
+     *
+     * @param signedData
+     * @return the signature with time stamps, or unchanged when no authority is configured
+     */
+    CompletableFuture<CMSSignedData> addTimeStamps(CMSSignedData signedData);
+
+    /**
+     * Blocking form of {@link #addTimeStamps(CMSSignedData)}.
+     *
+     * @param signedData
+     * @throws IOException when the authority could not be reached and time stamps are required
+     */
+    CMSSignedData addTimeStampsAndWait(CMSSignedData signedData) throws IOException;
+}
@@ -0,0 +1,315 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.model.BulkSigningReport;
+import net.ljcomputing.htmltopdf.model.BulkSigningResult;
+import net.ljcomputing.htmltopdf.model.MemoryPolicy;
+import net.ljcomputing.htmltopdf.service.BulkSigningService;
+import net.ljcomputing.htmltopdf.service.KeyStoreService;
+import net.ljcomputing.htmltopdf.service.PdfOptimizationService;
+import net.ljcomputing.htmltopdf.service.PdfSigningService;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Signs documents in a three stage pipeline: optimize on the I/O pool, sign on the signing pool and
+ * publish on the I/O pool, so disk access for one document overlaps the digest and RSA work for
+ * others. Documents go file to file under the memory policy for their size rather than through
+ * the heap, and a signed copy only appears under its final name once it is complete.
+ */
+@Service
+@Slf4j
+public class BulkSigningServiceImpl implements BulkSigningService {
+    @Value("${app.signing.maxInFlight:64}")
+    private int maxInFlight;
+
+    @Value("${app.optimizer.enabled:false}")
+    private boolean optimizerEnabled;
+
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Autowired private PdfOptimizationService pdfOptimizationService;
+
+    @Autowired private MemoryPolicy memoryPolicy;
+
+    @Autowired
+    @Qualifier("signingExecutor")
+    private Executor signingExecutor;
+
+    @Autowired
+    @Qualifier("signingIoExecutor")
+    private Executor signingIoExecutor;
+
+    @Override
+    public BulkSigningReport signAll(List<Path> pdfs, Supplier<PDSignature> signatureSupplier) {
+        return signAll(pdfs, signatureSupplier, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    @Override
+    public BulkSigningReport signAll(
+            List<Path> pdfs, Supplier<PDSignature> signatureSupplier, String keystore) {
+        long start = System.nanoTime();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<CompletableFuture<BulkSigningResult>> futures = new ArrayList<>(pdfs.size());
+
+        for (Path pdf : pdfs) {
+            inFlight.acquireUninterruptibly();
+            CompletableFuture<BulkSigningResult> future = signOne(pdf, signatureSupplier, keystore);
+            future.whenComplete((result, e) -> inFlight.release());
+            futures.add(future);
+        }
+
+        BulkSigningReport report = new BulkSigningReport();
+
+        for (CompletableFuture<BulkSigningResult> future : futures) {
+            BulkSigningResult result = future.join();
+            report.getResults().add(result);
+            report.setBytesRead(report.getBytesRead() + result.getBytesRead());
+            report.setBytesWritten(report.getBytesWritten() + result.getBytesWritten());
+
+            if (result.isSuccess()) {
+                report.setSucceeded(report.getSucceeded() + 1);
+            } else {
+                report.setFailed(report.getFailed() + 1);
+            }
+        }
+
+        report.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+        log.info(
+                "signed {} of {} documents in {} ms ({} docs/s, {} MB/s read), {} failed",
+                report.getSucceeded(),
+                pdfs.size(),
+                report.getElapsedMs(),
+                String.format("%.1f", report.getDocumentsPerSecond()),
+                String.format("%.1f", report.getMegabytesPerSecond()),
+                report.getFailed());
+
+        return report;
+    }
+
+    @Override
+    public BulkSigningReport signDirectory(Path directory, Supplier<PDSignature> signatureSupplier)
+            throws IOException {
+        return signDirectory(directory, signatureSupplier, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    @Override
+    public BulkSigningReport signDirectory(
+            Path directory, Supplier<PDSignature> signatureSupplier, String keystore)
+            throws IOException {
+        List<Path> pdfs;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            pdfs =
+                    files.filter(Files::isRegularFile)
+                            .filter(
+                                    file -> {
+                                        String name =
+                                                file.getFileName()
+                                                        .toString()
+                                                        .toLowerCase(Locale.ROOT);
+                                        return name.endsWith(".pdf")
+                                                && !name.endsWith("-signed.pdf");
+                                    })
+                            .sorted()
+                            .collect(Collectors.toList());
+        }
+
+        return signAll(pdfs, signatureSupplier, keystore);
+    }
+
+    /**
+     * Run one document through the optimize, sign and publish stages. The returned future always
+     * completes normally; failures are captured in the result.
+     *
+     * @param pdf
+     * @param signatureSupplier
+     * @param keystore
+     */
+    private CompletableFuture<BulkSigningResult> signOne(
+            Path pdf, Supplier<PDSignature> signatureSupplier, String keystore) {
+        long start = System.nanoTime();
+        BulkSigningResult result = new BulkSigningResult();
+        result.setSource(pdf);
+
+        return CompletableFuture.supplyAsync(() -> optimize(pdf, result), signingIoExecutor)
+                .thenApplyAsync(
+                        input -> sign(pdf, input, signatureSupplier.get(), keystore),
+                        signingExecutor)
+                .thenApplyAsync(signed -> publish(pdf, signed), signingIoExecutor)
+                .handle(
+                        (output, e) -> {
+                            if (e == null) {
+                                result.setSuccess(true);
+                                result.setOutput(output);
+                                result.setBytesWritten(output.toFile().length());
+                            } else {
+                                Throwable cause =
+                                        e instanceof CompletionException ? e.getCause() : e;
+                                result.setError(cause.toString());
+                                log.warn("Error signing {}: {}", pdf, cause.toString());
+                            }
+
+                            result.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+                            return result;
+                        });
+    }
+
+    /**
+     * Optimize before signing; afterwards any change would need a full save and break the
+     * signature. Signed documents are passed through unchanged for the same reason.
+     *
+     * @param pdf
+     * @param result receives the size read
+     * @return the document to sign: the source, or an optimized temporary copy beside it
+     */
+    private Path optimize(Path pdf, BulkSigningResult result) {
+        try {
+            long size = Files.size(pdf);
+            result.setBytesRead(size);
+
+            if (!optimizerEnabled) {
+                return pdf;
+            }
+
+            try (PDDocument document = PDDocument.load(pdf.toFile(), memoryPolicy.forSize(size))) {
+                if (!document.getSignatureDictionaries().isEmpty()) {
+                    return pdf;
+                }
+
+                pdfOptimizationService.optimize(document);
+                Path optimized = temporary(pdf, ".optimized");
+
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(optimized))) {
+                    document.save(os);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(optimized);
+                    throw e;
+                }
+
+                return optimized;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sign into a temporary file beside the signed path. An optimized input copy is deleted
+     * afterwards.
+     *
+     * @param pdf the source document
+     * @param input the document to sign
+     * @param signature
+     * @param keystore
+     * @return the temporary signed file
+     */
+    private Path sign(Path pdf, Path input, PDSignature signature, String keystore) {
+        try {
+            Path signed = temporary(PdfSigningServiceImpl.signedPath(pdf), ".signing");
+
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(signed))) {
+                pdfSigningService.signPdf(input, os, signature, keystore);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(signed);
+                throw e;
+            }
+
+            return signed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (!input.equals(pdf)) {
+                deleteQuietly(input);
+            }
+        }
+    }
+
+    /**
+     * Move a complete signed file to its final name, replacing an earlier copy in one step.
+     *
+     * @param pdf the source document
+     * @param signed the temporary signed file
+     */
+    private Path publish(Path pdf, Path signed) {
+        Path output = PdfSigningServiceImpl.signedPath(pdf);
+
+        try {
+            try {
+                return Files.move(
+                        signed,
+                        output,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                return Files.move(signed, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            deleteQuietly(signed);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A new temporary file in the same directory as a path, so it can be renamed onto it.
+     *
+     * @param path
+     * @param suffix
+     * @throws IOException
+     */
+    private static Path temporary(Path path, String suffix) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        return Files.createTempFile(
+                absolute.getParent(), "." + absolute.getFileName(), suffix + ".tmp");
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Error deleting {}: {}", path, e.toString());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.action.PDAction;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionGoTo;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Restores links and the outline of a document rendered in chunks by {@link DocumentSplitter}.
+ * The anchor bookmarks of the merged chunks give the page and position of every link target;
+ * links between chunks are pointed at them and the outline is rebuilt from the source document.
+ */
+final class ChunkLinker {
+    private ChunkLinker() {}
+
+    /**
+     * Resolve anchor links and rebuild the outline of a merged document.
+     *
+     * @param merged the merged chunks
+     * @param source the document that was split
+     * @throws IOException
+     */
+    static void link(PDDocument merged, Document source) throws IOException {
+        Map<String, PDPageDestination> anchors = anchors(merged);
+
+        for (PDPage page : merged.getPages()) {
+            resolveLinks(page, anchors);
+        }
+
+        Element bookmarks = DocumentSplitter.firstElement(source, "bookmarks");
+
+        if (bookmarks == null) {
+            merged.getDocumentCatalog().setDocumentOutline(null);
+            return;
+        }
+
+        PDDocumentOutline outline = new PDDocumentOutline();
+        addBookmarks(outline, bookmarks, anchors);
+        outline.openNode();
+        merged.getDocumentCatalog().setDocumentOutline(outline);
+    }
+
+    /**
+     * Destinations of the anchor bookmarks, by target id.
+     *
+     * @param merged
+     * @throws IOException
+     */
+    private static Map<String, PDPageDestination> anchors(PDDocument merged) throws IOException {
+        Map<String, PDPageDestination> anchors = new HashMap<>();
+        PDDocumentOutline outline = merged.getDocumentCatalog().getDocumentOutline();
+
+        if (outline == null) {
+            return anchors;
+        }
+
+        for (PDOutlineItem item : outline.children()) {
+            String id = DocumentSplitter.anchorId(item.getTitle());
+            PDDestination destination = item.getDestination();
+
+            if (destination == null && item.getAction() instanceof PDActionGoTo) {
+                destination = ((PDActionGoTo) item.getAction()).getDestination();
+            }
+
+            if (id != null && destination instanceof PDPageDestination) {
+                anchors.putIfAbsent(id, (PDPageDestination) destination);
+            }
+        }
+
+        return anchors;
+    }
+
+    /**
+     * Point anchor links at their target, dropping those whose target was not rendered.
+     *
+     * @param page
+     * @param anchors
+     * @throws IOException
+     */
+    private static void resolveLinks(PDPage page, Map<String, PDPageDestination> anchors)
+            throws IOException {
+        List<PDAnnotation> annotations = page.getAnnotations();
+        List<PDAnnotation> kept = new ArrayList<>(annotations.size());
+        boolean changed = false;
+
+        for (PDAnnotation annotation : annotations) {
+            PDAction action =
+                    annotation instanceof PDAnnotationLink
+                            ? ((PDAnnotationLink) annotation).getAction()
+                            : null;
+            String id = null;
+
+            if (action instanceof PDActionURI) {
+                id = DocumentSplitter.anchorId(((PDActionURI) action).getURI());
+            }
+
+            if (id == null) {
+                kept.add(annotation);
+                continue;
+            }
+
+            changed = true;
+            PDPageDestination destination = anchors.get(id);
+
+            if (destination != null) {
+                PDActionGoTo goTo = new PDActionGoTo();
+                goTo.setDestination(destination);
+                ((PDAnnotationLink) annotation).setAction(goTo);
+                kept.add(annotation);
+            }
+        }
+
+        if (changed) {
+            page.setAnnotations(kept);
+        }
+    }
+
+    /**
+     * Add outline items for the bookmark elements under a parent. A bookmark whose target was not
+     * rendered is replaced by its children.
+     *
+     * @param parent
+     * @param element
+     * @param anchors
+     */
+    private static void addBookmarks(
+            PDOutlineNode parent, Element element, Map<String, PDPageDestination> anchors) {
+        for (Element bookmark : DocumentSplitter.elementChildren(element)) {
+            String href = bookmark.getAttribute("href");
+            PDPageDestination destination =
+                    href.startsWith("#") ? anchors.get(href.substring(1)) : null;
+
+            if (destination == null) {
+                addBookmarks(parent, bookmark, anchors);
+                continue;
+            }
+
+            PDOutlineItem item = new PDOutlineItem();
+            item.setTitle(bookmark.getAttribute("name"));
+            item.setDestination(destination);
+            parent.addLast(item);
+            addBookmarks(item, bookmark, anchors);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+/**
+ * Stops calls to a failing dependency for a while: after a number of consecutive failures the
+ * circuit opens, and once the open period has passed a single trial call is let through.
+ */
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openNanos;
+    private int failures;
+    private long openedAt;
+    private boolean trial;
+
+    CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMs * 1_000_000;
+    }
+
+    /** Whether a call may go ahead now. */
+    synchronized boolean allow() {
+        if (failures < failureThreshold) {
+            return true;
+        }
+
+        if (!trial && System.nanoTime() - openedAt >= openNanos) {
+            trial = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    synchronized void success() {
+        failures = 0;
+        trial = false;
+    }
+
+    synchronized void failure() {
+        failures++;
+
+        if (failures >= failureThreshold) {
+            openedAt = System.nanoTime();
+            trial = false;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return failures >= failureThreshold;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.OutputStream;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import net.ljcomputing.htmltopdf.model.SignatureCredentials;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSAbsentContent;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.CMSTypedData;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Immutable CMS signing setup for one set of credentials. The certificate store and digest
+ * provider are built once; each thread keeps its own generator, since BouncyCastle signers and
+ * digest calculators are stateful.
+ */
+class CmsSignerContext {
+    static final String SIGNATURE_ALGORITHM = "SHA256WithRSA";
+
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final AlgorithmIdentifier DIGEST_ALGORITHM_ID =
+            new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256);
+
+    private final SignatureCredentials credentials;
+    private final X509Certificate certificate;
+    private final JcaCertStore certStore;
+    private final DigestCalculatorProvider digestCalculatorProvider;
+    private final JcaContentSignerBuilder contentSignerBuilder;
+    private final ThreadLocal<CMSSignedDataGenerator> generators = new ThreadLocal<>();
+    private final ThreadLocal<DigestGenerator> digestGenerators = new ThreadLocal<>();
+
+    CmsSignerContext(SignatureCredentials credentials)
+            throws CertificateEncodingException, OperatorCreationException {
+        this.credentials = credentials;
+        certificate = (X509Certificate) credentials.getCertificateChain()[0];
+        certStore = new JcaCertStore(Arrays.asList(credentials.getCertificateChain()));
+        digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+        contentSignerBuilder = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM);
+    }
+
+    SignatureCredentials getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Generate a detached CMS signature over the content. A generator is only handed back to the
+     * thread after a successful run, so a failure part way through never leaves a half updated
+     * digest behind for the next signature.
+     *
+     * @param content
+     * @throws CMSException
+     */
+    CMSSignedData sign(CMSTypedData content) throws CMSException {
+        CMSSignedDataGenerator gen = generators.get();
+        generators.remove();
+
+        if (gen == null) {
+            try {
+                gen = newGenerator();
+            } catch (OperatorCreationException | CertificateEncodingException e) {
+                throw new CMSException("Error creating signer", e);
+            }
+        }
+
+        CMSSignedData signedData = gen.generate(content, false);
+        generators.set(gen);
+        return signedData;
+    }
+
+    /**
+     * Generate a detached CMS signature from a SHA-256 digest of the content computed elsewhere,
+     * so the content itself never passes through the CMS generator. The signed attributes carry
+     * the digest as the message digest.
+     *
+     * @param digest
+     * @throws CMSException
+     */
+    CMSSignedData signDigest(byte[] digest) throws CMSException {
+        DigestGenerator gen = digestGenerators.get();
+        digestGenerators.remove();
+
+        if (gen == null) {
+            try {
+                PrecomputedDigest calculator = new PrecomputedDigest();
+                gen = new DigestGenerator(newGenerator(calculator), calculator);
+            } catch (OperatorCreationException | CertificateEncodingException e) {
+                throw new CMSException("Error creating signer", e);
+            }
+        }
+
+        gen.calculator.digest = digest;
+
+        try {
+            CMSSignedData signedData = gen.generator.generate(new CMSAbsentContent(), false);
+            digestGenerators.set(gen);
+            return signedData;
+        } finally {
+            gen.calculator.digest = null;
+        }
+    }
+
+    private CMSSignedDataGenerator newGenerator()
+            throws CMSException, OperatorCreationException, CertificateEncodingException {
+        return newGenerator(digestCalculatorProvider);
+    }
+
+    private CMSSignedDataGenerator newGenerator(DigestCalculatorProvider digests)
+            throws CMSException, OperatorCreationException, CertificateEncodingException {
+        ContentSigner signer = contentSignerBuilder.build(credentials.getPrivateKey());
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+        gen.addSignerInfoGenerator(
+                new JcaSignerInfoGeneratorBuilder(digests).build(signer, certificate));
+        gen.addCertificates(certStore);
+        return gen;
+    }
+
+    /** A generator bound to the calculator that feeds it precomputed digests. */
+    private static class DigestGenerator {
+        private final CMSSignedDataGenerator generator;
+        private final PrecomputedDigest calculator;
+
+        DigestGenerator(CMSSignedDataGenerator generator, PrecomputedDigest calculator) {
+            this.generator = generator;
+            this.calculator = calculator;
+        }
+    }
+
+    /** Hands out a digest computed before signing instead of hashing any content itself. */
+    private static class PrecomputedDigest implements DigestCalculator, DigestCalculatorProvider {
+        private byte[] digest;
+
+        @Override
+        public DigestCalculator get(AlgorithmIdentifier algorithm)
+                throws OperatorCreationException {
+            if (!DIGEST_ALGORITHM_ID.getAlgorithm().equals(algorithm.getAlgorithm())) {
+                throw new OperatorCreationException("unsupported digest " + algorithm);
+            }
+
+            return this;
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return DIGEST_ALGORITHM_ID;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public byte[] getDigest() {
+            return digest;
+        }
+    }
+}
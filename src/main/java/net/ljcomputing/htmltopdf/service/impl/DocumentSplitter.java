@@ -0,0 +1,533 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.FileCopyUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Splits a document into chunks that can be laid out independently. A chunk boundary is an
+ * element with an inline {@code page-break-before: always} or {@code break-before: page} style, or
+ * one of the configured boundary tags. Boundaries are looked for among the children of the body,
+ * descending through single wrapper elements. Each chunk starts on a new page, so a boundary tag
+ * that was not already a page break becomes one.
+ *
+ * <p>A chunk holds the head and only its own slice of the body. Links to an element in another
+ * chunk are pointed at {@link #ANCHOR_SCHEME} URIs, and every link or bookmark target gets a
+ * bookmark with such a title, so {@link ChunkLinker} can restore links and the outline once the
+ * chunks are merged. CSS page counters restart in every chunk, so a document using them in its
+ * style elements is only split when page numbers are stamped after merging; its counters are then
+ * blanked. Counters in linked stylesheets cannot be blanked, so such a document is never split.
+ */
+@Slf4j
+class DocumentSplitter {
+    /** Marks links and bookmarks to be resolved after merging; followed by the hex target id. */
+    static final String ANCHOR_SCHEME = "x-split-anchor:";
+
+    private static final Pattern PAGE_BREAK =
+            Pattern.compile("(page-break-before\\s*:\\s*always|break-before\\s*:\\s*page)");
+    private static final Pattern PAGE_COUNTER = Pattern.compile("counter\\(\\s*pages?\\s*\\)");
+    private static final Pattern PAGE_COUNTER_CONTENT =
+            Pattern.compile("content\\s*:[^;}]*counter\\(\\s*pages?\\s*\\)[^;}]*");
+
+    private final Set<String> boundaryTags = new HashSet<>();
+    private final int maxChunks;
+    private final boolean stampPageNumbers;
+    private final FSStreamFactory streamFactory;
+
+    /**
+     * @param boundaryTags
+     * @param maxChunks
+     * @param stampPageNumbers whether page numbers are stamped on the merged document
+     * @param streamFactory reads linked stylesheets
+     */
+    DocumentSplitter(
+            List<String> boundaryTags,
+            int maxChunks,
+            boolean stampPageNumbers,
+            FSStreamFactory streamFactory) {
+        for (String tag : boundaryTags) {
+            if (!tag.trim().isEmpty()) {
+                this.boundaryTags.add(tag.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        this.maxChunks = maxChunks;
+        this.stampPageNumbers = stampPageNumbers;
+        this.streamFactory = streamFactory;
+    }
+
+    /**
+     * Split a document. The source document is not modified.
+     *
+     * @param document
+     * @param baseUri used to resolve linked stylesheets
+     * @return the chunks in document order; the document itself when it is not split
+     */
+    List<Document> split(Document document, String baseUri) {
+        Element body = firstElement(document, "body");
+
+        if (body == null
+                || (!stampPageNumbers && usesPageCounters(document))
+                || linksPageCounters(document, baseUri)) {
+            return Collections.singletonList(document);
+        }
+
+        Element container = container(body);
+        List<int[]> ranges = balance(container, ranges(container));
+
+        if (ranges.size() < 2) {
+            return Collections.singletonList(document);
+        }
+
+        Set<String> targets = targets(document);
+        Set<Node> chain = new HashSet<>();
+
+        for (Node node = container; node != null; node = node.getParentNode()) {
+            chain.add(node);
+        }
+
+        List<Document> chunks = new ArrayList<>(ranges.size());
+
+        for (int r = 0; r < ranges.size(); r++) {
+            Document chunk = document.getImplementation().createDocument(null, null, null);
+            Element root = document.getDocumentElement();
+            Node rootCopy = chunk.importNode(root, false);
+            chunk.appendChild(rootCopy);
+            copy(root, rootCopy, chain, container, ranges.get(r), r, ranges.size(), false);
+
+            linkAcrossChunks(chunk);
+            anchorBookmarks(chunk, targets);
+
+            if (stampPageNumbers) {
+                suppressPageCounters(chunk);
+            }
+
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Whether the document's style sheets number pages with CSS counters.
+     *
+     * @param document
+     */
+    static boolean usesPageCounters(Document document) {
+        NodeList styles = document.getElementsByTagName("style");
+
+        for (int i = 0; i < styles.getLength(); i++) {
+            if (PAGE_COUNTER.matcher(styles.item(i).getTextContent()).find()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether a stylesheet linked from the document numbers pages with CSS counters. A stylesheet
+     * that cannot be read does not count, as the renderer cannot read it either.
+     *
+     * @param document
+     * @param baseUri
+     */
+    boolean linksPageCounters(Document document, String baseUri) {
+        NodeList links = document.getElementsByTagName("link");
+
+        for (int i = 0; i < links.getLength(); i++) {
+            Element link = (Element) links.item(i);
+            String href = link.getAttribute("href").trim();
+
+            if (!link.getAttribute("rel").toLowerCase(Locale.ROOT).contains("stylesheet")
+                    || href.isEmpty()) {
+                continue;
+            }
+
+            try {
+                String url = baseUri == null ? href : URI.create(baseUri).resolve(href).toString();
+                FSStream stream = streamFactory.getUrl(url);
+                Reader reader = stream == null ? null : stream.getReader();
+                String css = reader == null ? "" : FileCopyUtils.copyToString(reader);
+
+                if (PAGE_COUNTER.matcher(css).find()) {
+                    return true;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.debug("Error reading stylesheet {}: {}", href, e.toString());
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Encode an element id for an {@link #ANCHOR_SCHEME} URI.
+     *
+     * @param id
+     */
+    static String anchor(String id) {
+        StringBuilder sb = new StringBuilder(ANCHOR_SCHEME);
+
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Decode the element id of an {@link #ANCHOR_SCHEME} URI.
+     *
+     * @param anchor
+     * @return the id, or null when the URI is not an anchor
+     */
+    static String anchorId(String anchor) {
+        if (anchor == null || !anchor.startsWith(ANCHOR_SCHEME)) {
+            return null;
+        }
+
+        String hex = anchor.substring(ANCHOR_SCHEME.length());
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy the children of a source node. Nodes outside the body are copied whole; inside it only
+     * the path down to the container and the container's children in range are. Text and other
+     * nodes beside that path belong to the first chunk when they come before it and to the last
+     * when they follow it; whitespace goes to every chunk.
+     *
+     * @param source
+     * @param target
+     * @param chain the container and its ancestors
+     * @param container
+     * @param range child node indexes of the container to copy
+     * @param index of the chunk
+     * @param count of chunks
+     * @param inBody
+     */
+    private void copy(
+            Node source,
+            Node target,
+            Set<Node> chain,
+            Element container,
+            int[] range,
+            int index,
+            int count,
+            boolean inBody) {
+        Document chunk = target.getOwnerDocument();
+
+        if (source == container) {
+            NodeList children = container.getChildNodes();
+
+            for (int i = range[0]; i < range[1]; i++) {
+                target.appendChild(chunk.importNode(children.item(i), true));
+            }
+
+            return;
+        }
+
+        boolean beforeChain = true;
+
+        for (Node child = source.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (chain.contains(child)) {
+                Node copy = chunk.importNode(child, false);
+                target.appendChild(copy);
+                boolean body = inBody || "body".equalsIgnoreCase(child.getNodeName());
+                copy(child, copy, chain, container, range, index, count, body);
+                beforeChain = false;
+            } else if (!inBody
+                    || isWhitespace(child)
+                    || (!(child instanceof Element)
+                            && (beforeChain ? index == 0 : index == count - 1))) {
+                target.appendChild(chunk.importNode(child, true));
+            }
+        }
+    }
+
+    /**
+     * Descend from the body through wrapper elements that are the only element child of their
+     * parent.
+     *
+     * @param body
+     */
+    private Element container(Element body) {
+        Element container = body;
+        List<Element> children = contentChildren(container);
+
+        while (children.size() == 1 && !isBoundary(children.get(0))) {
+            Element only = children.get(0);
+
+            if (contentChildren(only).isEmpty()) {
+                break;
+            }
+
+            container = only;
+            children = contentChildren(container);
+        }
+
+        return container;
+    }
+
+    /**
+     * Child node index ranges, each starting at a boundary element.
+     *
+     * @param container
+     */
+    private List<int[]> ranges(Element container) {
+        List<int[]> ranges = new ArrayList<>();
+        NodeList children = container.getChildNodes();
+        int start = 0;
+        boolean content = false;
+
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+
+            if (child instanceof Element && !isBookmarks(child)) {
+                if (isBoundary((Element) child) && content) {
+                    ranges.add(new int[] {start, i});
+                    start = i;
+                }
+
+                content = true;
+            }
+        }
+
+        ranges.add(new int[] {start, children.getLength()});
+        return ranges;
+    }
+
+    /**
+     * Join neighbouring ranges so there are at most {@code maxChunks} chunks of roughly equal
+     * element count. Starting a renderer per tiny section costs more than it saves.
+     *
+     * @param container
+     * @param ranges
+     */
+    private List<int[]> balance(Element container, List<int[]> ranges) {
+        if (ranges.size() <= maxChunks) {
+            return ranges;
+        }
+
+        NodeList children = container.getChildNodes();
+        long[] weights = new long[ranges.size()];
+        long total = 0;
+
+        for (int r = 0; r < ranges.size(); r++) {
+            for (int i = ranges.get(r)[0]; i < ranges.get(r)[1]; i++) {
+                Node child = children.item(i);
+                weights[r] +=
+                        child instanceof Element
+                                ? ((Element) child).getElementsByTagName("*").getLength() + 1
+                                : 0;
+            }
+
+            total += weights[r];
+        }
+
+        long target = Math.max(1, total / maxChunks);
+        List<int[]> balanced = new ArrayList<>();
+        int start = ranges.get(0)[0];
+        long weight = 0;
+
+        for (int r = 0; r < ranges.size(); r++) {
+            weight += weights[r];
+            boolean last = r == ranges.size() - 1;
+
+            if (last || (weight >= target && balanced.size() < maxChunks - 1)) {
+                balanced.add(new int[] {start, ranges.get(r)[1]});
+                start = last ? start : ranges.get(r + 1)[0];
+                weight = 0;
+            }
+        }
+
+        return balanced;
+    }
+
+    private static boolean isWhitespace(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE && node.getTextContent().trim().isEmpty();
+    }
+
+    /** The HTML parser moves a {@code bookmarks} element from the head into the body. */
+    private static boolean isBookmarks(Node node) {
+        return "bookmarks".equalsIgnoreCase(node.getNodeName());
+    }
+
+    private static List<Element> contentChildren(Element parent) {
+        List<Element> children = elementChildren(parent);
+        children.removeIf(DocumentSplitter::isBookmarks);
+        return children;
+    }
+
+    private boolean isBoundary(Element element) {
+        String style = element.getAttribute("style").toLowerCase(Locale.ROOT);
+        return boundaryTags.contains(element.getTagName().toLowerCase(Locale.ROOT))
+                || PAGE_BREAK.matcher(style).find();
+    }
+
+    /**
+     * Ids that internal links or bookmarks point at.
+     *
+     * @param document
+     */
+    private Set<String> targets(Document document) {
+        Set<String> targets = new HashSet<>();
+
+        for (String tag : new String[] {"a", "bookmark"}) {
+            NodeList elements = document.getElementsByTagName(tag);
+
+            for (int i = 0; i < elements.getLength(); i++) {
+                String href = ((Element) elements.item(i)).getAttribute("href");
+
+                if (href.startsWith("#") && href.length() > 1) {
+                    targets.add(href.substring(1));
+                }
+            }
+        }
+
+        return targets;
+    }
+
+    /**
+     * Point links to elements outside the chunk at anchor URIs.
+     *
+     * @param chunk
+     */
+    private void linkAcrossChunks(Document chunk) {
+        Set<String> ids = new HashSet<>();
+        collectIds(chunk.getDocumentElement(), ids);
+        NodeList links = chunk.getElementsByTagName("a");
+
+        for (int i = 0; i < links.getLength(); i++) {
+            Element link = (Element) links.item(i);
+            String href = link.getAttribute("href");
+
+            if (href.startsWith("#") && href.length() > 1 && !ids.contains(href.substring(1))) {
+                link.setAttribute("href", anchor(href.substring(1)));
+            }
+        }
+    }
+
+    /**
+     * Replace the chunk's bookmarks with one anchor bookmark per link or bookmark target it
+     * holds; the real outline is rebuilt from the source document after merging.
+     *
+     * @param chunk
+     * @param targets
+     */
+    private void anchorBookmarks(Document chunk, Set<String> targets) {
+        Element bookmarks = firstElement(chunk, "bookmarks");
+
+        if (bookmarks != null) {
+            bookmarks.getParentNode().removeChild(bookmarks);
+        }
+
+        Element head = firstElement(chunk, "head");
+        Set<String> ids = new HashSet<>();
+        collectIds(chunk.getDocumentElement(), ids);
+        ids.retainAll(targets);
+
+        if (head == null || ids.isEmpty()) {
+            return;
+        }
+
+        bookmarks = chunk.createElement("bookmarks");
+
+        for (String id : ids) {
+            Element bookmark = chunk.createElement("bookmark");
+            bookmark.setAttribute("name", anchor(id));
+            bookmark.setAttribute("href", "#" + id);
+            bookmarks.appendChild(bookmark);
+        }
+
+        head.appendChild(bookmarks);
+    }
+
+    /**
+     * Blank content built from page counters, which would restart in every chunk.
+     *
+     * @param chunk
+     */
+    private void suppressPageCounters(Document chunk) {
+        NodeList styles = chunk.getElementsByTagName("style");
+
+        for (int i = 0; i < styles.getLength(); i++) {
+            Node style = styles.item(i);
+            String css = style.getTextContent();
+
+            if (PAGE_COUNTER.matcher(css).find()) {
+                style.setTextContent(PAGE_COUNTER_CONTENT.matcher(css).replaceAll("content: none"));
+            }
+        }
+    }
+
+    private void collectIds(Element element, Set<String> ids) {
+        if (element.hasAttribute("id")) {
+            ids.add(element.getAttribute("id"));
+        }
+
+        for (Element child : elementChildren(element)) {
+            collectIds(child, ids);
+        }
+    }
+
+    static Element firstElement(Document document, String tagName) {
+        NodeList elements = document.getElementsByTagName(tagName);
+        return elements.getLength() == 0 ? null : (Element) elements.item(0);
+    }
+
+    static List<Element> elementChildren(Element parent) {
+        List<Element> elements = new ArrayList<>();
+
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                elements.add((Element) child);
+            }
+        }
+
+        return elements;
+    }
+}
@@ -23,22 +23,60 @@ package net.ljcomputing.htmltopdf.service.impl;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import javax.annotation.PostConstruct;
+import net.ljcomputing.htmltopdf.budget.RenderContext;
+import net.ljcomputing.htmltopdf.cache.LruCache;
+import net.ljcomputing.htmltopdf.metrics.PipelineMetrics;
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
 import net.ljcomputing.htmltopdf.service.Html5ParsingService;
+import net.ljcomputing.htmltopdf.service.HtmlSlimmingService;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.helper.W3CDom;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 
 @Service
 public class Html5ParsingServiceImpl implements Html5ParsingService {
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    @Value("${app.parsing.cacheMaxEntries:128}")
+    private long cacheMaxEntries;
+
+    @Value("${app.parsing.mapThresholdBytes:1048576}")
+    private long mapThresholdBytes;
+
     @Autowired W3CDom w3cDom;
 
+    @Autowired private PipelineMetrics metrics;
+
+    @Autowired private HtmlSlimmingService htmlSlimmingService;
+
+    @Value("${app.slimming.enabled:false}")
+    private boolean slimmingEnabled;
+
+    private LruCache<String, CachedDocument> documentCache;
+
+    @PostConstruct
+    void initialize() {
+        documentCache = new LruCache<>(cacheMaxEntries);
+    }
+
     /**
      * Parse an HTML 5 Document from a URL.
      *
      * <p>Original code: https://github.com/danfickle/openhtmltopdf/wiki/Integration-Guide
      *
+     * <p>Parsed documents are cached. A cached file is reused while its modification time and size
+     * are unchanged; a cached remote page is revalidated with its ETag or Last-Modified header.
+     * Each caller receives its own copy of the cached document.
+     *
      * @param urlStr
      * @param timeoutMs
      * @throws IOException
@@ -46,14 +84,119 @@ public class Html5ParsingServiceImpl implements Html5ParsingService {
     @Override
     public Document html5ParseDocument(String urlStr, int timeoutMs) throws IOException {
         URL url = new URL(urlStr);
-        org.jsoup.nodes.Document doc;
+        CachedDocument cached = documentCache.get(urlStr);
+        CachedDocument parsed;
 
         if (url.getProtocol().equalsIgnoreCase("file")) {
-            doc = Jsoup.parse(new File(url.getPath()), "UTF-8");
+            return parseFile(new File(url.getPath()).toPath(), urlStr, urlStr);
         } else {
-            doc = Jsoup.parse(url, timeoutMs);
+            Connection connection = Jsoup.connect(urlStr).timeout(timeoutMs);
+
+            if (cached != null && cached.etag != null) {
+                connection.header("If-None-Match", cached.etag);
+            }
+
+            if (cached != null && cached.lastModified != null) {
+                connection.header("If-Modified-Since", cached.lastModified);
+            }
+
+            Connection.Response response =
+                    metrics.record(PipelineMetrics.FETCH, connection::execute);
+            RenderContext.addInput(response.bodyAsBytes().length);
+
+            if (cached != null && response.statusCode() == HTTP_NOT_MODIFIED) {
+                return cached.copy();
+            }
+
+            org.jsoup.nodes.Document doc = metrics.record(PipelineMetrics.PARSE, response::parse);
+            parsed = new CachedDocument(toW3c(doc));
+            parsed.etag = response.header("ETag");
+            parsed.lastModified = response.header("Last-Modified");
+
+            if (parsed.etag == null && parsed.lastModified == null) {
+                // nothing to revalidate with
+                documentCache.invalidate(urlStr);
+                return parsed.document;
+            }
+        }
+
+        documentCache.put(urlStr, parsed);
+        return parsed.copy();
+    }
+
+    @Override
+    public Document html5ParseDocument(Path path, String baseUri) throws IOException {
+        return parseFile(path, path.toUri() + " " + baseUri, baseUri);
+    }
+
+    @Override
+    public Document html5ParseDocument(ByteBuffer buffer, String baseUri) throws IOException {
+        RenderContext.addInput(buffer.remaining());
+        return toW3c(
+                metrics.record(
+                        PipelineMetrics.PARSE, () -> LocalHtmlIngest.parse(buffer, baseUri)));
+    }
+
+    /**
+     * Parse a local file through the memory mapped ingest path, reusing the cached document while
+     * the file's modification time and size are unchanged.
+     *
+     * @param path
+     * @param cacheKey
+     * @param baseUri
+     * @throws IOException
+     */
+    private Document parseFile(Path path, String cacheKey, String baseUri) throws IOException {
+        CachedDocument cached = documentCache.get(cacheKey);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long length = attributes.size();
+        RenderContext.addInput(length);
+
+        if (cached != null
+                && cached.fileLastModified == lastModified
+                && cached.fileLength == length) {
+            return cached.copy();
         }
 
-        return w3cDom.fromJsoup(doc);
+        org.jsoup.nodes.Document doc =
+                metrics.record(
+                        PipelineMetrics.PARSE,
+                        () -> LocalHtmlIngest.parse(path, mapThresholdBytes, baseUri));
+        CachedDocument parsed = new CachedDocument(toW3c(doc));
+        parsed.fileLastModified = lastModified;
+        parsed.fileLength = length;
+        documentCache.put(cacheKey, parsed);
+        return parsed.copy();
+    }
+
+    private Document toW3c(org.jsoup.nodes.Document doc) {
+        RenderContext.check();
+
+        if (slimmingEnabled) {
+            SlimmingReport report =
+                    metrics.record(PipelineMetrics.SLIMMING, () -> htmlSlimmingService.slim(doc));
+            metrics.recordSlimming(report);
+        }
+
+        return metrics.record(PipelineMetrics.W3C_CONVERSION, () -> w3cDom.fromJsoup(doc));
+    }
+
+    /** A parsed document with the validators needed to tell whether it is still current. */
+    static class CachedDocument {
+        private final Document document;
+        private String etag;
+        private String lastModified;
+        private long fileLastModified;
+        private long fileLength;
+
+        CachedDocument(Document document) {
+            this.document = document;
+        }
+
+        /** Deep copy; the DOM implementation is not safe for concurrent traversal. */
+        synchronized Document copy() {
+            return (Document) document.cloneNode(true);
+        }
     }
 }
@@ -0,0 +1,399 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
+import net.ljcomputing.htmltopdf.service.HtmlSlimmingService;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Selector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Removes markup the renderer would only spend time on. Unused style rules are found by running
+ * each rule's selectors, with pseudo-classes and pseudo-elements stripped, against the page; a
+ * selector jsoup cannot parse keeps its rule. Only {@code <style>} elements are pruned: linked
+ * stylesheets are loaded by the renderer, and inlining them here would change how their relative
+ * URLs resolve.
+ */
+@Service
+@Slf4j
+public class HtmlSlimmingServiceImpl implements HtmlSlimmingService {
+    /** A transparent 1x1 GIF, standing in for inline images over the size limit. */
+    private static final String PLACEHOLDER_IMAGE =
+            "data:image/gif;base64,R0lGODlhAQABAIAAAAAAAP///yH5BAEAAAAALAAAAAABAAEAAAIBRAA7";
+
+    private static final String HIDDEN = "[hidden], [style~=(?i)display\\s*:\\s*none]";
+
+    private static final String UNUSED =
+            "script, template,"
+                    + " link[rel~=(?i)^(preload|prefetch|modulepreload|dns-prefetch|preconnect)$]";
+
+    @Value("${app.slimming.removeUnusedCss:true}")
+    private boolean removeUnusedCss;
+
+    @Value("${app.slimming.maxDataUriBytes:1048576}")
+    private int maxDataUriBytes;
+
+    @Override
+    public SlimmingReport slim(Document document) {
+        SlimmingReport report = new SlimmingReport();
+        report.setScripts(remove(document.select(UNUSED), report));
+
+        if (document.body() != null) {
+            report.setHiddenElements(remove(document.body().select(HIDDEN), report));
+        }
+
+        removeCommentsAndHandlers(document, report);
+        replaceOversizedImages(document, report);
+
+        if (removeUnusedCss) {
+            Map<String, Boolean> matches = new HashMap<>();
+
+            for (Element style : document.select("style")) {
+                pruneStyle(style, document, matches, report);
+            }
+        }
+
+        log.debug("slimmed {}: {}", document.location(), report);
+        return report;
+    }
+
+    /**
+     * Remove elements, skipping those already gone with a removed ancestor.
+     *
+     * @param elements
+     * @param report
+     * @return the number of elements removed directly
+     */
+    private int remove(List<Element> elements, SlimmingReport report) {
+        int removed = 0;
+
+        for (Element element : elements) {
+            if (element.ownerDocument() == null) {
+                continue;
+            }
+
+            report.setNodes(report.getNodes() + element.getAllElements().size());
+            report.setBytes(report.getBytes() + element.outerHtml().length());
+            element.remove();
+            removed++;
+        }
+
+        return removed;
+    }
+
+    private void removeCommentsAndHandlers(Document document, SlimmingReport report) {
+        for (Element element : document.getAllElements()) {
+            List<Node> comments = new ArrayList<>();
+
+            for (Node child : element.childNodes()) {
+                if (child instanceof Comment) {
+                    comments.add(child);
+                }
+            }
+
+            for (Node comment : comments) {
+                report.setComments(report.getComments() + 1);
+                report.setNodes(report.getNodes() + 1);
+                report.setBytes(report.getBytes() + ((Comment) comment).getData().length() + 7);
+                comment.remove();
+            }
+
+            List<String> handlers = new ArrayList<>();
+
+            for (Attribute attribute : element.attributes()) {
+                if (attribute.getKey().regionMatches(true, 0, "on", 0, 2)) {
+                    handlers.add(attribute.getKey());
+                    report.setBytes(report.getBytes() + attribute.html().length() + 1);
+                }
+            }
+
+            for (String handler : handlers) {
+                element.removeAttr(handler);
+            }
+
+            report.setEventHandlers(report.getEventHandlers() + handlers.size());
+        }
+    }
+
+    private void replaceOversizedImages(Document document, SlimmingReport report) {
+        for (Element image : document.select("img[src^=data:]")) {
+            String src = image.attr("src");
+
+            if (src.length() > maxDataUriBytes) {
+                image.attr("src", PLACEHOLDER_IMAGE);
+                report.setDataUris(report.getDataUris() + 1);
+                report.setBytes(report.getBytes() + src.length() - PLACEHOLDER_IMAGE.length());
+            }
+        }
+    }
+
+    private void pruneStyle(
+            Element style, Document document, Map<String, Boolean> matches, SlimmingReport report) {
+        String css = style.data();
+        String pruned = prune(css, document, matches, report);
+
+        if (pruned.length() != css.length()) {
+            report.setBytes(report.getBytes() + css.length() - pruned.length());
+            style.empty();
+            style.appendChild(new DataNode(pruned));
+        }
+    }
+
+    /**
+     * Drop style rules whose selectors match nothing, descending into conditional group rules.
+     * Other at-rules are kept as they are; comments are dropped.
+     *
+     * @param css
+     * @param document
+     * @param matches selector results so far
+     * @param report
+     */
+    private String prune(
+            String css, Document document, Map<String, Boolean> matches, SlimmingReport report) {
+        StringBuilder out = new StringBuilder(css.length());
+        int i = 0;
+
+        while (i < css.length()) {
+            int stop = scan(css, i, false);
+
+            if (stop >= css.length()) {
+                out.append(stripComments(css.substring(i)));
+                break;
+            }
+
+            String prelude = stripComments(css.substring(i, stop)).trim();
+
+            if (css.charAt(stop) == ';') {
+                out.append(prelude).append(';');
+                i = stop + 1;
+                continue;
+            }
+
+            int close = scan(css, stop + 1, true);
+            String body = css.substring(stop + 1, Math.min(close, css.length()));
+            i = close + 1;
+            String lower = prelude.toLowerCase(Locale.ROOT);
+
+            if (lower.startsWith("@media") || lower.startsWith("@supports")) {
+                String inner = prune(body, document, matches, report);
+
+                if (!inner.trim().isEmpty()) {
+                    out.append(prelude).append('{').append(inner).append('}');
+                }
+            } else if (prelude.startsWith("@") || used(prelude, document, matches)) {
+                out.append(prelude).append('{').append(body).append('}');
+            } else {
+                report.setCssRules(report.getCssRules() + 1);
+            }
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Find the end of a rule prelude (the next top level brace or semicolon) or, for a block, its
+     * closing brace. Strings and comments are skipped.
+     *
+     * @param css
+     * @param from
+     * @param block whether to look for the brace closing a block that starts before from
+     * @return the index found, or the length of the text
+     */
+    private static int scan(String css, int from, boolean block) {
+        int depth = 0;
+        int i = from;
+
+        while (i < css.length()) {
+            char c = css.charAt(i);
+
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '"' || c == '\'') {
+                int end = i + 1;
+
+                while (end < css.length() && css.charAt(end) != c) {
+                    end += css.charAt(end) == '\\' ? 2 : 1;
+                }
+
+                i = end + 1;
+                continue;
+            } else if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                i = end < 0 ? css.length() : end + 2;
+                continue;
+            } else if (c == '{') {
+                if (!block) {
+                    return i;
+                }
+
+                depth++;
+            } else if (c == '}') {
+                if (block && depth == 0) {
+                    return i;
+                }
+
+                depth--;
+            } else if (c == ';' && !block) {
+                return i;
+            }
+
+            i++;
+        }
+
+        return css.length();
+    }
+
+    private static String stripComments(String css) {
+        return css.replaceAll("(?s)/\\*.*?\\*/", "");
+    }
+
+    /**
+     * Whether any selector of a comma separated list matches an element of the document.
+     *
+     * @param selectors
+     * @param document
+     * @param matches
+     */
+    private static boolean used(String selectors, Document document, Map<String, Boolean> matches) {
+        for (String selector : splitSelectors(selectors)) {
+            String base = stripPseudo(selector).trim();
+
+            if (base.isEmpty() || ">+~".indexOf(base.charAt(base.length() - 1)) >= 0) {
+                base = base + "*";
+            }
+
+            Boolean match = matches.get(base);
+
+            if (match == null) {
+                try {
+                    match = document.selectFirst(base) != null;
+                } catch (Selector.SelectorParseException | IllegalArgumentException e) {
+                    match = true;
+                }
+
+                matches.put(base, match);
+            }
+
+            if (match) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<String> splitSelectors(String selectors) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+
+        for (int i = 0; i < selectors.length(); i++) {
+            char c = selectors.charAt(i);
+
+            if (c == '\\') {
+                i++;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(selectors.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        parts.add(selectors.substring(start));
+        return parts;
+    }
+
+    /**
+     * Remove pseudo-classes and pseudo-elements, with their arguments, so the selector matches the
+     * elements the rule could ever apply to. Escaped characters and attribute selectors are left
+     * alone.
+     *
+     * @param selector
+     */
+    private static String stripPseudo(String selector) {
+        StringBuilder sb = new StringBuilder(selector.length());
+        int brackets = 0;
+        int i = 0;
+
+        while (i < selector.length()) {
+            char c = selector.charAt(i);
+
+            if (c == '\\' && i + 1 < selector.length()) {
+                sb.append(c).append(selector.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+
+            if (c == '[') {
+                brackets++;
+            } else if (c == ']') {
+                brackets--;
+            } else if (c == ':' && brackets == 0) {
+                i++;
+
+                if (i < selector.length() && selector.charAt(i) == ':') {
+                    i++;
+                }
+
+                while (i < selector.length()
+                        && (Character.isLetterOrDigit(selector.charAt(i))
+                                || selector.charAt(i) == '-'
+                                || selector.charAt(i) == '_')) {
+                    i++;
+                }
+
+                if (i < selector.length() && selector.charAt(i) == '(') {
+                    int depth = 0;
+
+                    do {
+                        char p = selector.charAt(i);
+                        depth += p == '(' ? 1 : p == ')' ? -1 : 0;
+                        i++;
+                    } while (i < selector.length() && depth > 0);
+                }
+
+                continue;
+            }
+
+            sb.append(c);
+            i++;
+        }
+
+        return sb.toString();
+    }
+}
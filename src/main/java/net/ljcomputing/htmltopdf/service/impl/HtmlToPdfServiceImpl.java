@@ -0,0 +1,570 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.budget.BudgetExceededException;
+import net.ljcomputing.htmltopdf.budget.RenderCancelledException;
+import net.ljcomputing.htmltopdf.budget.RenderContext;
+import net.ljcomputing.htmltopdf.budget.RenderWatchdog;
+import net.ljcomputing.htmltopdf.cache.CachingStreamFactory;
+import net.ljcomputing.htmltopdf.cache.RenderOutputCache;
+import net.ljcomputing.htmltopdf.font.FontRegistry;
+import net.ljcomputing.htmltopdf.metrics.CountingOutputStream;
+import net.ljcomputing.htmltopdf.metrics.PipelineMetrics;
+import net.ljcomputing.htmltopdf.model.ConversionRequest;
+import net.ljcomputing.htmltopdf.model.MemoryPolicy;
+import net.ljcomputing.htmltopdf.model.OptimizationReport;
+import net.ljcomputing.htmltopdf.service.Html5ParsingService;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
+import net.ljcomputing.htmltopdf.service.ImageOptimizationService;
+import net.ljcomputing.htmltopdf.service.PdfOptimizationService;
+import net.ljcomputing.htmltopdf.service.SubresourcePrefetchService;
+import net.ljcomputing.htmltopdf.service.TemplateParsingService;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+@Service
+@Slf4j
+public class HtmlToPdfServiceImpl implements HtmlToPdfService {
+    @Autowired private Html5ParsingService html5ParsingService;
+
+    @Autowired private TemplateParsingService templateParsingService;
+
+    @Autowired private SubresourcePrefetchService subresourcePrefetchService;
+
+    @Autowired private ImageOptimizationService imageOptimizationService;
+
+    @Autowired private PdfOptimizationService pdfOptimizationService;
+
+    @Autowired private ObjectProvider<PdfRendererBuilder> pdfRendererBuilderProvider;
+
+    @Autowired private PipelineMetrics metrics;
+
+    @Autowired private MemoryPolicy memoryPolicy;
+
+    @Autowired private CachingStreamFactory cachingStreamFactory;
+
+    @Autowired private ObjectProvider<RenderOutputCache> renderOutputCacheProvider;
+
+    @Autowired private RenderWatchdog renderWatchdog;
+
+    @Autowired private FontRegistry fontRegistry;
+
+    @Value("${app.prefetch.enabled:true}")
+    private boolean prefetchEnabled;
+
+    @Value("${app.images.enabled:false}")
+    private boolean imagesEnabled;
+
+    @Value("${app.optimizer.enabled:false}")
+    private boolean optimizerEnabled;
+
+    @Value("${app.optimizer.minCompressBytes:64}")
+    private int minCompressBytes;
+
+    @Value("${app.fonts.locations:}")
+    private List<String> fontLocations;
+
+    @Value("${app.split.boundaryTags:section}")
+    private List<String> boundaryTags;
+
+    @Value("${app.split.maxChunks:0}")
+    private int maxChunks;
+
+    @Value("${app.split.pageNumberFormat:}")
+    private String pageNumberFormat;
+
+    private DocumentSplitter documentSplitter;
+
+    @Autowired
+    @Qualifier("parseExecutor")
+    private Executor parseExecutor;
+
+    @Autowired
+    @Qualifier("renderExecutor")
+    private Executor renderExecutor;
+
+    @PostConstruct
+    void initialize() {
+        int chunks = maxChunks > 0 ? maxChunks : 2 * Runtime.getRuntime().availableProcessors();
+        documentSplitter =
+                new DocumentSplitter(
+                        boundaryTags, chunks, !pageNumberFormat.isEmpty(), cachingStreamFactory);
+    }
+
+    @Override
+    public CompletableFuture<Path> convert(ConversionRequest request) {
+        RenderContext context = renderWatchdog.watch(request.getBudget());
+        CompletableFuture<Path> result =
+                CompletableFuture.supplyAsync(within(context, () -> parse(request)), parseExecutor)
+                        .thenApplyAsync(
+                                document -> within(context, () -> render(request, document)).get(),
+                                renderExecutor);
+        return watched(context, result);
+    }
+
+    @Override
+    public List<CompletableFuture<Path>> convertAll(List<ConversionRequest> requests) {
+        List<CompletableFuture<Path>> futures = new ArrayList<>(requests.size());
+
+        for (ConversionRequest request : requests) {
+            futures.add(convert(request));
+        }
+
+        return futures;
+    }
+
+    @Override
+    public CompletableFuture<Path> convertTemplate(
+            String templateName, Object model, String baseUri, Path output) {
+        ConversionRequest request = new ConversionRequest(baseUri, output);
+        RenderContext context = renderWatchdog.watch();
+        CompletableFuture<Path> result =
+                CompletableFuture.supplyAsync(
+                                within(context, () -> parseTemplate(templateName, model, baseUri)),
+                                parseExecutor)
+                        .thenApplyAsync(
+                                document -> within(context, () -> render(request, document)).get(),
+                                renderExecutor);
+        return watched(context, result);
+    }
+
+    /**
+     * Run a stage inside a render's context. A failure caused by cancellation or an exhausted
+     * budget, such as an I/O error from an interrupted channel, is reported as such.
+     *
+     * @param context
+     * @param stage
+     */
+    private static <T> Supplier<T> within(RenderContext context, Supplier<T> stage) {
+        return () -> {
+            try (RenderContext.Scope scope = context.enter()) {
+                return stage.get();
+            } catch (BudgetExceededException | RenderCancelledException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                try {
+                    context.checkpoint();
+                } catch (RuntimeException stopped) {
+                    stopped.addSuppressed(e);
+                    throw stopped;
+                }
+
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Release the render's watch when it completes, cancel the render when the caller cancels
+     * the future and count renders stopped early.
+     *
+     * @param context
+     * @param result
+     */
+    private CompletableFuture<Path> watched(RenderContext context, CompletableFuture<Path> result) {
+        result.whenComplete(
+                (path, e) -> {
+                    renderWatchdog.release(context);
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+
+                    if (cause instanceof CancellationException) {
+                        context.cancel();
+                        metrics.recordStopped("cancelled");
+                    } else if (cause instanceof RenderCancelledException) {
+                        metrics.recordStopped("cancelled");
+                    } else if (cause instanceof BudgetExceededException) {
+                        metrics.recordStopped(((BudgetExceededException) cause).getLimit().tag());
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    public void render(Document document, String baseUri, OutputStream os) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(os);
+        renderDocument(document, baseUri, counting, optimizerEnabled);
+        metrics.recordOutputSize("pdf", counting.getCount());
+    }
+
+    @Override
+    public void renderSplit(Document document, String baseUri, OutputStream os)
+            throws IOException {
+        List<Document> chunks = documentSplitter.split(document, baseUri);
+
+        if (chunks.size() < 2) {
+            render(document, baseUri, os);
+            return;
+        }
+
+        List<ChunkTask> tasks = new ArrayList<>(chunks.size());
+
+        for (Document chunk : chunks) {
+            ChunkTask task = new ChunkTask(chunk, baseUri, RenderContext.current());
+            tasks.add(task);
+            renderExecutor.execute(task);
+        }
+
+        // help with chunks no pool thread has started yet, so a caller that is itself a render
+        // thread never waits on work queued behind it
+        for (ChunkTask task : tasks) {
+            task.run();
+        }
+
+        CountingOutputStream counting = new CountingOutputStream(os);
+        List<PDDocument> sources = new ArrayList<>(tasks.size());
+
+        try (PDDocument merged = new PDDocument(memoryPolicy.forRendering())) {
+            PDFMergerUtility merger = new PDFMergerUtility();
+
+            for (ChunkTask task : tasks) {
+                RenderContext.check();
+                PDDocument source =
+                        PDDocument.load(task.join(), "", null, null, memoryPolicy.forRendering());
+                sources.add(source);
+                merger.appendDocument(merged, source);
+            }
+
+            ChunkLinker.link(merged, document);
+            stampPageNumbers(merged);
+            save(merged, counting);
+        } finally {
+            for (PDDocument source : sources) {
+                source.close();
+            }
+        }
+
+        log.debug("rendered {} in {} chunks", baseUri, chunks.size());
+        metrics.recordOutputSize("pdf", counting.getCount());
+    }
+
+    /**
+     * Write a running page number at the bottom of every page when a format is configured.
+     *
+     * @param pdf
+     * @throws IOException
+     */
+    private void stampPageNumbers(PDDocument pdf) throws IOException {
+        if (pageNumberFormat.isEmpty()) {
+            return;
+        }
+
+        int pages = pdf.getNumberOfPages();
+        float fontSize = 9;
+
+        for (int i = 0; i < pages; i++) {
+            PDPage page = pdf.getPage(i);
+            String text = String.format(pageNumberFormat, i + 1, pages);
+            float width = PDType1Font.HELVETICA.getStringWidth(text) / 1000 * fontSize;
+            PDRectangle box = page.getMediaBox();
+
+            try (PDPageContentStream cs =
+                    new PDPageContentStream(pdf, page, AppendMode.APPEND, true, true)) {
+                cs.beginText();
+                cs.setFont(PDType1Font.HELVETICA, fontSize);
+                cs.newLineAtOffset(
+                        box.getLowerLeftX() + (box.getWidth() - width) / 2,
+                        box.getLowerLeftY() + 20);
+                cs.showText(text);
+                cs.endText();
+            }
+        }
+    }
+
+    /**
+     * Render a document with a fresh builder.
+     *
+     * @param document
+     * @param baseUri
+     * @param os
+     * @param optimize whether to optimize the PDF before it is written
+     * @throws IOException
+     */
+    private void renderDocument(
+            Document document, String baseUri, OutputStream os, boolean optimize)
+            throws IOException {
+        PdfRendererBuilder builder = pdfRendererBuilderProvider.getObject();
+        builder.withW3cDocument(document, baseUri);
+        builder.toStream(os);
+
+        try (PDDocument pdf = new PDDocument(memoryPolicy.forRendering())) {
+            builder.usePDDocument(pdf);
+            fontRegistry.registerOn(builder, pdf);
+            render(builder, optimize ? os : null);
+        }
+    }
+
+    /**
+     * Lay out and write the document configured on the builder.
+     *
+     * @param builder
+     * @param optimizeTo when set, the rendered document is optimized and saved here rather than
+     *     written by the renderer
+     * @throws IOException
+     */
+    private void render(PdfRendererBuilder builder, OutputStream optimizeTo) throws IOException {
+        try (PdfBoxRenderer renderer = builder.buildPdfRenderer()) {
+            RenderContext.check();
+            metrics.record(
+                    PipelineMetrics.LAYOUT,
+                    () -> {
+                        renderer.layout();
+                        return null;
+                    });
+            RenderContext.check();
+            RenderContext.addRenderedPages(renderer.getRootBox().getLayer().getPages().size());
+            metrics.record(
+                    PipelineMetrics.RENDER,
+                    () -> {
+                        if (optimizeTo == null) {
+                            renderer.createPDF();
+                        } else {
+                            renderer.createPDFWithoutClosing();
+                        }
+
+                        return null;
+                    });
+
+            if (optimizeTo != null) {
+                RenderContext.check();
+                save(renderer.getPdfDocument(), optimizeTo);
+            }
+        }
+    }
+
+    /**
+     * Optimize a finished document when enabled, then write it.
+     *
+     * @param pdf
+     * @param os
+     * @throws IOException
+     */
+    private void save(PDDocument pdf, OutputStream os) throws IOException {
+        if (optimizerEnabled) {
+            OptimizationReport report =
+                    metrics.record(
+                            PipelineMetrics.OPTIMIZE, () -> pdfOptimizationService.optimize(pdf));
+            log.debug("optimized: {}", report);
+        }
+
+        pdf.save(os);
+    }
+
+    /**
+     * Parse stage.
+     *
+     * @param request
+     */
+    private Document parse(ConversionRequest request) {
+        try {
+            Document document =
+                    html5ParsingService.html5ParseDocument(
+                            request.getSourceUrl(), request.getTimeoutMs());
+            prefetch(document, request.getSourceUrl());
+            return document;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error parsing " + request.getSourceUrl(), e);
+        }
+    }
+
+    /** Renders one chunk of a split document; runs once, on whichever thread claims it first. */
+    class ChunkTask implements Runnable {
+        private final Document chunk;
+        private final String baseUri;
+        private final RenderContext context;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        ChunkTask(Document chunk, String baseUri, RenderContext context) {
+            this.chunk = chunk;
+            this.baseUri = baseUri;
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+
+            try (RenderContext.Scope scope = context == null ? null : context.enter()) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                // the merged document is optimized as a whole
+                renderDocument(chunk, baseUri, os, false);
+                result.complete(os.toByteArray());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        byte[] join() throws IOException {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof BudgetExceededException
+                        || e.getCause() instanceof RenderCancelledException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause()
+                        : new IOException("Error rendering chunk", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Download subresources while still on the I/O bound parse pool, so render threads do not
+     * wait on the network, then shrink oversized images before layout sees them.
+     *
+     * @param document
+     * @param baseUri
+     */
+    private void prefetch(Document document, String baseUri) {
+        if (prefetchEnabled) {
+            metrics.record(
+                    PipelineMetrics.PREFETCH,
+                    () -> subresourcePrefetchService.prefetch(document, baseUri));
+        }
+
+        if (imagesEnabled) {
+            metrics.record(
+                    PipelineMetrics.IMAGES,
+                    () -> imageOptimizationService.optimize(document, baseUri));
+        }
+    }
+
+    /**
+     * Template parse stage.
+     *
+     * @param templateName
+     * @param model
+     * @param baseUri
+     */
+    private Document parseTemplate(String templateName, Object model, String baseUri) {
+        try {
+            Document document =
+                    templateParsingService.templateParseDocument(templateName, model, baseUri);
+            prefetch(document, baseUri);
+            return document;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error parsing template " + templateName, e);
+        }
+    }
+
+    /**
+     * Render stage. With the output cache enabled, identical inputs are served from disk instead of
+     * being rendered again; only unsigned output is cached, as signing happens afterwards.
+     *
+     * @param request
+     * @param document
+     */
+    private Path render(ConversionRequest request, Document document) {
+        Path output = request.getOutput();
+        RenderOutputCache cache = renderOutputCacheProvider.getIfAvailable();
+
+        try {
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+
+            if (cache == null) {
+                try (OutputStream os = Files.newOutputStream(output)) {
+                    write(request, document, os);
+                }
+            } else {
+                String key =
+                        RenderKey.of(
+                                document,
+                                request.getSourceUrl(),
+                                renderOptions(request),
+                                cachingStreamFactory);
+                boolean hit = cache.render(key, os -> write(request, document, os), output);
+                log.debug("render cache {} for {}", hit ? "hit" : "miss", request.getSourceUrl());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error rendering " + request.getSourceUrl(), e);
+        }
+
+        log.debug("rendered {} to {}", request.getSourceUrl(), output);
+        return output;
+    }
+
+    private void write(ConversionRequest request, Document document, OutputStream os)
+            throws IOException {
+        if (request.isSplit()) {
+            renderSplit(document, request.getSourceUrl(), os);
+        } else {
+            render(document, request.getSourceUrl(), os);
+        }
+    }
+
+    /**
+     * Options that change the rendered output, for the cache key. Image optimization and slimming
+     * rewrite the document itself, so they are covered by its content.
+     *
+     * @param request
+     */
+    private String renderOptions(ConversionRequest request) {
+        String options =
+                request.isSplit()
+                        ? "split;" + boundaryTags + ";" + maxChunks + ";" + pageNumberFormat
+                        : "single";
+        return options
+                + ";optimizer="
+                + optimizerEnabled
+                + ";"
+                + minCompressBytes
+                + ";fonts="
+                + fontLocations
+                + ";"
+                + fontRegistry.getFingerprint();
+    }
+}
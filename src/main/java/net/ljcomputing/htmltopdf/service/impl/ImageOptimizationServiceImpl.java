@@ -0,0 +1,412 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.cache.CachingStreamFactory;
+import net.ljcomputing.htmltopdf.cache.LruCache;
+import net.ljcomputing.htmltopdf.model.ImageReport;
+import net.ljcomputing.htmltopdf.service.ImageOptimizationService;
+import org.apache.pdfbox.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Resizes images to what the page can show. The displayed size comes from the width and height
+ * attributes or inline style in CSS pixels (96 per inch). Images shown at their intrinsic size are
+ * bounded by the configured maximum width and given width and height attributes for that size, so
+ * the smaller replacement lays out exactly as the original did; images sized in other units are
+ * left alone. Processed images are cached by a hash of the source bytes and the target size, so
+ * the same logo or photo is only resampled once.
+ */
+@Service
+@Slf4j
+public class ImageOptimizationServiceImpl implements ImageOptimizationService {
+    private static final double CSS_DPI = 96.0;
+
+    private static final Pattern PIXELS = Pattern.compile("^\\s*(\\d+(?:\\.\\d+)?)\\s*(px)?\\s*$");
+
+    private static final Pattern STYLE_SIZE =
+            Pattern.compile("(?i)(?:^|;)\\s*(width|height)\\s*:\\s*(\\d+(?:\\.\\d+)?)px");
+
+    private static final Pattern STYLE_DIMENSION =
+            Pattern.compile("(?i)(?:^|;)\\s*(?:width|height)\\s*:");
+
+    private static final Pattern DATA_URI =
+            Pattern.compile("^data:image/(png|jpe?g);base64,(.*)$", Pattern.DOTALL);
+
+    @Value("${app.images.targetDpi:150}")
+    private int targetDpi;
+
+    @Value("${app.images.jpegQuality:0.8}")
+    private float jpegQuality;
+
+    @Value("${app.images.maxWidthPx:1275}")
+    private int maxWidthPx;
+
+    @Value("${app.images.minReduction:1.25}")
+    private double minReduction;
+
+    @Value("${app.images.cacheMaxBytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Autowired private CachingStreamFactory cachingStreamFactory;
+
+    private LruCache<String, Processed> processed;
+
+    @PostConstruct
+    void initialize() {
+        processed = new LruCache<>(cacheMaxBytes, image -> image.dataUri.length());
+    }
+
+    @Override
+    public ImageReport optimize(Document document, String baseUri) {
+        long start = System.nanoTime();
+        ImageReport report = new ImageReport();
+        NodeList images = document.getElementsByTagName("img");
+        URI base = baseUri == null ? null : URI.create(baseUri);
+
+        for (int i = 0; i < images.getLength(); i++) {
+            Element image = (Element) images.item(i);
+            report.setImages(report.getImages() + 1);
+
+            try {
+                optimize(image, base, report);
+            } catch (IOException | RuntimeException e) {
+                report.setSkipped(report.getSkipped() + 1);
+                log.debug("Skipping image {}: {}", image.getAttribute("src"), e.toString());
+            }
+        }
+
+        report.setElapsedMs((System.nanoTime() - start) / 1_000_000);
+        log.debug("optimized images of {}: {}", baseUri, report);
+        return report;
+    }
+
+    private void optimize(Element image, URI base, ImageReport report) throws IOException {
+        String src = image.getAttribute("src").trim();
+        String format;
+        byte[] original;
+        Matcher data = DATA_URI.matcher(src);
+
+        if (data.matches()) {
+            format = data.group(1).startsWith("png") ? "png" : "jpeg";
+            original = Base64.getMimeDecoder().decode(data.group(2));
+        } else if (!src.isEmpty() && !src.startsWith("data:")) {
+            String url = base == null ? src : base.resolve(src).toString();
+            format = format(url);
+
+            if (format == null) {
+                report.setSkipped(report.getSkipped() + 1);
+                return;
+            }
+
+            try (InputStream is = cachingStreamFactory.getUrl(url).getStream()) {
+                if (is == null) {
+                    report.setSkipped(report.getSkipped() + 1);
+                    return;
+                }
+
+                original = IOUtils.toByteArray(is);
+            }
+        } else {
+            report.setSkipped(report.getSkipped() + 1);
+            return;
+        }
+
+        int[] size = dimensions(original);
+        int[] target = targetSize(image, size[0], size[1]);
+        report.setBytesBefore(report.getBytesBefore() + original.length);
+
+        if (target == null) {
+            report.setBytesAfter(report.getBytesAfter() + original.length);
+            return;
+        }
+
+        String key = hash(original) + ":" + target[0] + "x" + target[1] + ":" + jpegQuality;
+        Processed result = processed.get(key);
+
+        if (result != null) {
+            report.setCached(report.getCached() + 1);
+        } else {
+            result = resize(original, format, target[0], target[1]);
+            processed.put(key, result);
+        }
+
+        if (result.bytes < original.length) {
+            if (cssPixels(image, "width") <= 0 && cssPixels(image, "height") <= 0) {
+                // the original was shown at its intrinsic size, one CSS pixel per image pixel
+                image.setAttribute("width", String.valueOf(size[0]));
+                image.setAttribute("height", String.valueOf(size[1]));
+            }
+
+            image.setAttribute("src", result.dataUri);
+            report.setResized(report.getResized() + 1);
+            report.setBytesAfter(report.getBytesAfter() + result.bytes);
+        } else {
+            report.setBytesAfter(report.getBytesAfter() + original.length);
+        }
+    }
+
+    /**
+     * The pixel size an image should be resampled to, or null when it is already small enough or
+     * its displayed size is given in units other than pixels.
+     *
+     * @param image
+     * @param width source width in pixels
+     * @param height source height in pixels
+     */
+    private int[] targetSize(Element image, int width, int height) {
+        double displayWidth = cssPixels(image, "width");
+        double displayHeight = cssPixels(image, "height");
+        double scale = targetDpi / CSS_DPI;
+        double maxWidth;
+
+        if (displayWidth > 0) {
+            maxWidth = displayWidth * scale;
+        } else if (displayHeight > 0) {
+            maxWidth = displayHeight * scale * width / height;
+        } else if (hasOtherSize(image)) {
+            return null;
+        } else {
+            maxWidth = maxWidthPx;
+        }
+
+        maxWidth = Math.min(maxWidth, maxWidthPx);
+
+        if (width < maxWidth * minReduction) {
+            return null;
+        }
+
+        int targetWidth = (int) Math.round(maxWidth);
+        int targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+        return new int[] {targetWidth, targetHeight};
+    }
+
+    /**
+     * The displayed size of an image in CSS pixels, from its inline style or attribute.
+     *
+     * @param image
+     * @param dimension width or height
+     * @return the size, or -1 when not given in pixels
+     */
+    private static double cssPixels(Element image, String dimension) {
+        Matcher style = STYLE_SIZE.matcher(image.getAttribute("style"));
+
+        while (style.find()) {
+            if (style.group(1).equalsIgnoreCase(dimension)) {
+                return Double.parseDouble(style.group(2));
+            }
+        }
+
+        Matcher attribute = PIXELS.matcher(image.getAttribute(dimension));
+        return attribute.matches() ? Double.parseDouble(attribute.group(1)) : -1;
+    }
+
+    /**
+     * Whether an image is sized by a width or height that is not in pixels, such as a percentage,
+     * whose displayed size is not known here.
+     *
+     * @param image
+     */
+    private static boolean hasOtherSize(Element image) {
+        return !image.getAttribute("width").trim().isEmpty()
+                || !image.getAttribute("height").trim().isEmpty()
+                || STYLE_DIMENSION.matcher(image.getAttribute("style")).find();
+    }
+
+    /**
+     * Read the image size from its header without decoding the pixels.
+     *
+     * @param bytes
+     * @throws IOException
+     */
+    private static int[] dimensions(byte[] bytes) throws IOException {
+        try (ImageInputStream iis =
+                ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+
+            if (!readers.hasNext()) {
+                throw new IOException("unsupported image");
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(iis, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Resample and re-encode an image. JPEGs are written at the configured quality; PNGs stay
+     * PNG, so transparency and line art survive.
+     *
+     * @param bytes
+     * @param format png or jpeg
+     * @param width
+     * @param height
+     * @throws IOException
+     */
+    private Processed resize(byte[] bytes, String format, int width, int height)
+            throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(bytes));
+
+        if (source == null) {
+            throw new IOException("unsupported image");
+        }
+
+        boolean jpeg = format.equals("jpeg");
+        BufferedImage scaled = scale(source, width, height, jpeg);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        if (jpeg) {
+            writeJpeg(scaled, out);
+        } else {
+            ImageIO.write(scaled, "png", out);
+        }
+
+        String encoded = Base64.getEncoder().encodeToString(out.toByteArray());
+        return new Processed("data:image/" + format + ";base64," + encoded, out.size());
+    }
+
+    /**
+     * Scale down in steps of at most one half, which keeps bilinear filtering from dropping
+     * detail on large reductions.
+     *
+     * @param source
+     * @param width
+     * @param height
+     * @param opaque whether to drop the alpha channel
+     */
+    private static BufferedImage scale(
+            BufferedImage source, int width, int height, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+
+            try {
+                g.setRenderingHint(
+                        RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(
+                        RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+
+            current = next;
+        } while (w != width || h != height);
+
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, ByteArrayOutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * The image format a URL names by its extension, or null for formats left alone.
+     *
+     * @param url
+     */
+    private static String format(String url) {
+        String path = URI.create(url).getPath();
+        String lower = path == null ? "" : path.toLowerCase(Locale.ROOT);
+
+        if (lower.endsWith(".png")) {
+            return "png";
+        } else if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return "jpeg";
+        }
+
+        return null;
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            return Base64.getUrlEncoder()
+                    .withoutPadding()
+                    .encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A resampled image, ready to drop into a src attribute. */
+    private static class Processed {
+        private final String dataUri;
+        private final int bytes;
+
+        Processed(String dataUri, int bytes) {
+            this.dataUri = dataUri;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.budget.BudgetExceededException;
+import net.ljcomputing.htmltopdf.budget.RenderContext;
+import net.ljcomputing.htmltopdf.budget.RenderWatchdog;
+import net.ljcomputing.htmltopdf.model.ConversionRequest;
+import net.ljcomputing.htmltopdf.model.Job;
+import net.ljcomputing.htmltopdf.model.JobStage;
+import net.ljcomputing.htmltopdf.queue.JobLog;
+import net.ljcomputing.htmltopdf.queue.JobRecord;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
+import net.ljcomputing.htmltopdf.service.JobQueueService;
+import net.ljcomputing.htmltopdf.service.PdfSigningService;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable queue in front of the render and sign stages. One dispatcher thread per stage waits for
+ * a ready job and one of the stage's permits, which bound how many jobs run at once, then takes
+ * further ready jobs while permits are free, logs the claim of the whole batch in one write and
+ * hands them to the stage's pool. Only jobs that are about to start are claimed, so the attempt
+ * count of a job is not spent while it waits. A failed stage is queued again after a delay that
+ * doubles with every attempt. A finished stage is checkpointed in the log; after a restart every
+ * job resumes at the stage it had not finished. Stages write to a temporary file and move it into
+ * place, so running one again is harmless.
+ *
+ * <p>Parsing is not a stage of its own: the parsed document lives only in memory, so it is part
+ * of the render stage.
+ */
+@Service
+@ConditionalOnProperty(prefix = "app.queue", name = "enabled", havingValue = "true")
+@Slf4j
+public class JobQueueServiceImpl implements JobQueueService {
+    private static final JobStage[] STAGES = {JobStage.RENDER, JobStage.SIGN};
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    @Value("${app.queue.directory:}")
+    private String directory;
+
+    @Value("${app.queue.fsync:true}")
+    private boolean fsync;
+
+    @Value("${app.queue.batchSize:16}")
+    private int batchSize;
+
+    @Value("${app.queue.renderConcurrency:0}")
+    private int renderConcurrency;
+
+    @Value("${app.queue.signConcurrency:0}")
+    private int signConcurrency;
+
+    @Value("${app.queue.maxAttempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.queue.retryBackoffMs:1000}")
+    private long retryBackoffMs;
+
+    @Value("${app.queue.compactAfter:10000}")
+    private long compactAfter;
+
+    @Autowired private HtmlToPdfService htmlToPdfService;
+
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Autowired private RenderWatchdog renderWatchdog;
+
+    @Autowired
+    @Qualifier("signingExecutor")
+    private Executor signingExecutor;
+
+    private JobLog jobLog;
+    private final Map<JobStage, BlockingQueue<Job>> ready = new EnumMap<>(JobStage.class);
+    private final Map<JobStage, Semaphore> permits = new EnumMap<>(JobStage.class);
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    @PostConstruct
+    void start() throws IOException {
+        Path path =
+                directory.isEmpty()
+                        ? Path.of(System.getProperty("java.io.tmpdir"), "htmltopdf-queue")
+                        : Path.of(directory);
+        jobLog = new JobLog(path.resolve("jobs.log"), fsync);
+
+        permits.put(JobStage.RENDER, new Semaphore(threads(renderConcurrency)));
+        permits.put(JobStage.SIGN, new Semaphore(threads(signConcurrency)));
+
+        for (JobStage stage : STAGES) {
+            ready.put(stage, new LinkedBlockingQueue<>());
+        }
+
+        List<Job> live = jobLog.live();
+
+        for (Job job : live) {
+            if (job.getAttempts() < maxAttempts) {
+                ready.get(job.getStage()).add(job);
+            } else {
+                // claimed that often without finishing, most likely by crashing the process
+                jobLog.append(JobRecord.fail(job.getId(), "gave up after " + job.getAttempts()));
+            }
+        }
+
+        if (!live.isEmpty()) {
+            log.info("resuming {} queued jobs from {}", live.size(), path);
+        }
+
+        for (JobStage stage : STAGES) {
+            String name = "queue-" + stage.name().toLowerCase(Locale.ROOT);
+            Thread thread = new Thread(() -> dispatch(stage), name);
+            thread.setDaemon(true);
+            thread.start();
+            dispatchers.add(thread);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        running = false;
+
+        for (Thread thread : dispatchers) {
+            thread.interrupt();
+        }
+
+        jobLog.close();
+    }
+
+    @Override
+    public String submit(Job job) throws IOException {
+        return submitAll(List.of(job)).get(0);
+    }
+
+    @Override
+    public List<String> submitAll(List<Job> jobs) throws IOException {
+        List<JobRecord> records = new ArrayList<>(jobs.size());
+        List<String> ids = new ArrayList<>(jobs.size());
+
+        List<Job> queued = new ArrayList<>(jobs.size());
+
+        for (Job submitted : jobs) {
+            // the queue keeps its own copy, which the caller can no longer change
+            Job job = submitted.copy();
+
+            if (job.getId() == null) {
+                job.setId(UUID.randomUUID().toString());
+            }
+
+            job.setStage(JobStage.RENDER);
+            job.setAttempts(0);
+            job.setError(null);
+            records.add(JobRecord.submit(job));
+            ids.add(job.getId());
+            queued.add(job);
+        }
+
+        jobLog.append(records);
+        ready.get(JobStage.RENDER).addAll(queued);
+        return ids;
+    }
+
+    @Override
+    public Job getJob(String id) {
+        Job job = jobLog.get(id);
+        return job == null ? null : job.copy();
+    }
+
+    @Override
+    public int pending() {
+        return jobLog.live().size();
+    }
+
+    @Override
+    public void compact() throws IOException {
+        jobLog.compact();
+    }
+
+    /**
+     * Claim and start ready jobs of one stage until shut down.
+     *
+     * @param stage
+     */
+    private void dispatch(JobStage stage) {
+        BlockingQueue<Job> queue = ready.get(stage);
+        Semaphore semaphore = permits.get(stage);
+
+        while (running) {
+            try {
+                Job first = queue.take();
+                semaphore.acquire();
+                List<Job> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+
+                while (batch.size() < batchSize && semaphore.tryAcquire()) {
+                    Job next = queue.poll();
+
+                    if (next == null) {
+                        semaphore.release();
+                        break;
+                    }
+
+                    batch.add(next);
+                }
+
+                List<String> ids = new ArrayList<>(batch.size());
+
+                for (Job job : batch) {
+                    ids.add(job.getId());
+                }
+
+                claim(stage, ids);
+
+                for (Job job : batch) {
+                    start(stage, job, semaphore);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Log the claim of jobs holding a permit, retrying with backoff while the log cannot be
+     * written, so a full or briefly unavailable disk holds the stage up instead of stopping it.
+     *
+     * @param stage
+     * @param ids
+     * @throws InterruptedException when shut down while waiting to retry
+     */
+    private void claim(JobStage stage, List<String> ids) throws InterruptedException {
+        long backoffMs = 100;
+
+        while (true) {
+            try {
+                jobLog.append(JobRecord.claim(stage, ids));
+                log.debug("claimed {} for {}", ids, stage);
+                return;
+            } catch (IOException e) {
+                log.error("Error writing the job log, retrying {} in {} ms", stage, backoffMs, e);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(2 * backoffMs, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void start(JobStage stage, Job job, Semaphore semaphore) {
+        CompletableFuture<Void> result;
+
+        try {
+            result = run(stage, job);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete(
+                (v, e) -> {
+                    semaphore.release();
+                    complete(stage, job, e);
+                });
+    }
+
+    private CompletableFuture<Void> run(JobStage stage, Job job) {
+        Path output = Path.of(job.getOutput());
+
+        if (stage == JobStage.RENDER) {
+            Path part = partPath(output);
+            ConversionRequest request = new ConversionRequest(job.getSourceUrl(), part);
+            request.setTimeoutMs(job.getTimeoutMs());
+            request.setSplit(job.isSplit());
+            return htmlToPdfService.convert(request).thenAccept(rendered -> move(part, output));
+        }
+
+        return CompletableFuture.runAsync(() -> sign(job, output), signingExecutor);
+    }
+
+    /**
+     * Checkpoint a finished stage and queue the next one, or retry a failed stage with backoff
+     * while it has attempts left.
+     *
+     * @param stage
+     * @param job
+     * @param error
+     */
+    private void complete(JobStage stage, Job job, Throwable error) {
+        try {
+            if (error == null) {
+                JobStage next =
+                        stage == JobStage.RENDER && job.isSign() ? JobStage.SIGN : JobStage.DONE;
+                jobLog.append(JobRecord.checkpoint(job.getId(), next));
+
+                if (!next.isFinished()) {
+                    ready.get(next).add(job);
+                }
+            } else {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+
+                // an exhausted budget fails the same way every time
+                if (job.getAttempts() < maxAttempts
+                        && !(cause instanceof BudgetExceededException)) {
+                    long delayMs = retryDelay(job.getAttempts());
+                    log.warn(
+                            "Error in {} for job {}, retrying in {} ms: {}",
+                            stage,
+                            job.getId(),
+                            delayMs,
+                            cause);
+                    CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                            .execute(() -> ready.get(stage).add(job));
+                } else {
+                    log.warn("Job {} failed in {}: {}", job.getId(), stage, cause);
+                    jobLog.append(JobRecord.fail(job.getId(), cause.toString()));
+                }
+            }
+
+            if (jobLog.getRecords() > compactAfter
+                    && jobLog.getRecords() > 2L * jobLog.live().size()) {
+                jobLog.compact();
+            }
+        } catch (IOException e) {
+            // the job stays at its stage in the log and runs again after a restart
+            log.error("Error writing the job log for job {}", job.getId(), e);
+        }
+    }
+
+    /**
+     * Delay before retrying a stage, doubling from {@code retryBackoffMs} with every attempt.
+     *
+     * @param attempts made so far, at least one
+     */
+    private long retryDelay(int attempts) {
+        long delayMs = retryBackoffMs;
+
+        for (int i = 1; i < attempts && delayMs < MAX_BACKOFF_MS; i++) {
+            delayMs *= 2;
+        }
+
+        return Math.min(delayMs, MAX_BACKOFF_MS);
+    }
+
+    private void sign(Job job, Path output) {
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName(job.getSignerName());
+        signature.setReason(job.getReason());
+        signature.setLocation(job.getLocation());
+        signature.setSignDate(Calendar.getInstance());
+
+        Path signed = PdfSigningServiceImpl.signedPath(output);
+        Path part = partPath(signed);
+        RenderContext context = renderWatchdog.watch();
+
+        try (RenderContext.Scope scope = context.enter();
+                OutputStream os = new BufferedOutputStream(Files.newOutputStream(part))) {
+            pdfSigningService.signPdf(output, os, signature, job.getKeystore());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error signing " + output, e);
+        } finally {
+            renderWatchdog.release(context);
+        }
+
+        move(part, signed);
+    }
+
+    private static void move(Path part, Path target) {
+        try {
+            Files.move(
+                    part,
+                    target,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error moving " + part + " to " + target, e);
+        }
+    }
+
+    private static Path partPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    private static int threads(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -20,38 +20,252 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.security.KeyStore;
 import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.configuration.KeystoreProperties;
+import net.ljcomputing.htmltopdf.model.KeystoreDefinition;
 import net.ljcomputing.htmltopdf.model.SignatureCredentials;
 import net.ljcomputing.htmltopdf.service.KeyStoreService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
+/**
+ * Registry of named signing identities. Key stores are loaded and their keys unlocked on first
+ * use; key store files on disk are watched and reloaded in the background when they change, so
+ * signing carries on with the old key until the new one is ready.
+ */
 @Service
 @Slf4j
 public class KeyStoreServiceImpl implements KeyStoreService {
-    @Value("${app.keystoreAlias}")
-    private String keystoreAlias;
+    @Autowired private KeystoreDefinition defaultKeystore;
 
-    @Value("${app.password}")
-    private String password;
+    @Autowired private KeystoreProperties keystoreProperties;
 
-    @Autowired private KeyStore keystore;
+    @Autowired private ResourceLoader resourceLoader;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    @PostConstruct
+    void initialize() {
+        entries.put(defaultKeystore.getName(), new Entry(defaultKeystore));
+
+        for (KeystoreDefinition definition : keystoreProperties.getKeystores()) {
+            entries.put(definition.getName(), new Entry(definition));
+        }
+
+        if (keystoreProperties.isWatchKeystores()) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
 
     @Override
     public SignatureCredentials retrieveCredentials() {
-        SignatureCredentials signatureCredentials = new SignatureCredentials();
+        return retrieveCredentials(DEFAULT_KEYSTORE);
+    }
 
+    @Override
+    public SignatureCredentials retrieveCredentials(String keystore) {
+        return entry(keystore).credentials();
+    }
+
+    @Override
+    public Set<String> keystores() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    @Override
+    public void invalidate() {
+        for (Entry entry : entries.values()) {
+            entry.invalidate();
+        }
+    }
+
+    @Override
+    public void invalidate(String keystore) {
+        entry(keystore).invalidate();
+    }
+
+    private Entry entry(String keystore) {
+        Entry entry = entries.get(keystore == null ? DEFAULT_KEYSTORE : keystore);
+
+        if (entry == null) {
+            throw new IllegalArgumentException("unknown keystore " + keystore);
+        }
+
+        return entry;
+    }
+
+    /** Watch the directories of the key stores that live on the file system. */
+    private void startWatcher() {
+        Set<Path> directories = new HashSet<>();
+
+        for (Entry entry : entries.values()) {
+            if (entry.file != null) {
+                directories.add(entry.file.getParent());
+            }
+        }
+
+        if (directories.isEmpty()) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            for (Path directory : directories) {
+                directory.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            log.warn("Key store files will not be watched: {}", e.getMessage());
+            return;
+        }
+
+        watcher = new Thread(this::watch, "keystore-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
         try {
-            signatureCredentials.setPrivateKey(
-                    (PrivateKey) keystore.getKey(keystoreAlias, password.toCharArray()));
-            signatureCredentials.setCertificateChain(keystore.getCertificateChain(keystoreAlias));
-        } catch (Exception e) {
-            log.error("Error retrieving signature credentials: ", e);
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                Set<Path> changed = new HashSet<>();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        changed.add(directory.resolve((Path) event.context()));
+                    }
+                }
+
+                key.reset();
+
+                for (Entry entry : entries.values()) {
+                    if (entry.file != null && changed.contains(entry.file)) {
+                        entry.reload();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Key store watcher stopped");
+        }
+    }
+
+    /** One registered key store and its unlocked credentials. */
+    private class Entry {
+        private final KeystoreDefinition definition;
+        private final Path file;
+        private volatile SignatureCredentials credentials;
+
+        Entry(KeystoreDefinition definition) {
+            this.definition = definition;
+            this.file = file(definition);
         }
 
-        return signatureCredentials;
+        SignatureCredentials credentials() {
+            SignatureCredentials signatureCredentials = credentials;
+
+            if (signatureCredentials == null) {
+                synchronized (this) {
+                    signatureCredentials = credentials;
+
+                    if (signatureCredentials == null) {
+                        signatureCredentials = load();
+                        credentials = signatureCredentials.isValid() ? signatureCredentials : null;
+                    }
+                }
+            }
+
+            return signatureCredentials;
+        }
+
+        void invalidate() {
+            credentials = null;
+        }
+
+        /**
+         * Load the changed key store before swapping it in. A file caught half written fails to
+         * load and keeps the current credentials; the write that completes it fires another event.
+         */
+        void reload() {
+            SignatureCredentials reloaded = load();
+
+            if (reloaded.isValid()) {
+                credentials = reloaded;
+                log.info("Reloaded keystore {}", definition.getName());
+            } else {
+                log.warn("Keeping current credentials for keystore {}", definition.getName());
+            }
+        }
+
+        /**
+         * Read the key store, unlock the private key and read the certificate chain.
+         *
+         * @return the credentials, invalid if the key store or alias could not be read
+         */
+        private SignatureCredentials load() {
+            SignatureCredentials signatureCredentials = new SignatureCredentials();
+            Resource resource = resourceLoader.getResource(definition.getLocation());
+
+            try (InputStream is = resource.getInputStream()) {
+                KeyStore keystore = KeyStore.getInstance(definition.getType());
+                keystore.load(is, definition.getPassword().toCharArray());
+                signatureCredentials.setPrivateKey(
+                        (PrivateKey)
+                                keystore.getKey(
+                                        definition.getAlias(), definition.keyPasswordChars()));
+                signatureCredentials.setCertificateChain(
+                        keystore.getCertificateChain(definition.getAlias()));
+            } catch (Exception e) {
+                log.error("Error retrieving signature credentials {}: ", definition.getName(), e);
+            }
+
+            return signatureCredentials;
+        }
+
+        private Path file(KeystoreDefinition definition) {
+            Resource resource = resourceLoader.getResource(definition.getLocation());
+
+            try {
+                return resource.isFile() ? resource.getFile().toPath().toAbsolutePath() : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
     }
 }
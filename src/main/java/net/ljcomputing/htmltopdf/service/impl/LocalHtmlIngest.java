@@ -0,0 +1,240 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jsoup.Jsoup;
+
+/**
+ * Fast path for local HTML: large files are memory mapped rather than copied through stream
+ * buffers, and the charset is sniffed from the byte order mark or a meta tag in the first bytes of
+ * the same buffer the parser then reads, so the input is only read once. Mappings are released as
+ * soon as the parse completes rather than whenever the buffer happens to be collected.
+ */
+final class LocalHtmlIngest {
+    /** How far into the document to look for a meta charset declaration. */
+    private static final int SNIFF_LENGTH = 1024;
+
+    private static final Pattern META_CHARSET =
+            Pattern.compile(
+                    "<meta[^>]+charset\\s*=\\s*[\"']?\\s*([a-zA-Z0-9_.:-]+)",
+                    Pattern.CASE_INSENSITIVE);
+
+    /** {@code sun.misc.Unsafe.invokeCleaner}, or null when the running JVM does not offer it. */
+    private static final Method INVOKE_CLEANER;
+
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method method = type.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = field.get(null);
+            invokeCleaner = method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // mappings are then left to the garbage collector
+        }
+
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private LocalHtmlIngest() {}
+
+    /**
+     * Read and parse a file, releasing any mapping before returning.
+     *
+     * @param path
+     * @param mapThreshold
+     * @param baseUri
+     * @throws IOException
+     */
+    static org.jsoup.nodes.Document parse(Path path, long mapThreshold, String baseUri)
+            throws IOException {
+        ByteBuffer buffer = read(path, mapThreshold);
+
+        try {
+            return parse(buffer, baseUri);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Read a file into a buffer, mapping it when it is at least {@code mapThreshold} bytes.
+     *
+     * @param path
+     * @param mapThreshold
+     * @throws IOException
+     */
+    static ByteBuffer read(Path path, long mapThreshold) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size >= mapThreshold) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    /**
+     * Unmap a buffer returned by {@link #read(Path, long)}. The buffer must not be used afterwards.
+     * Heap buffers are left alone.
+     *
+     * @param buffer
+     * @return whether a mapping was released
+     */
+    static boolean release(ByteBuffer buffer) {
+        if (!(buffer instanceof MappedByteBuffer) || INVOKE_CLEANER == null) {
+            return false;
+        }
+
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse HTML from a buffer. The buffer's position and limit are not changed.
+     *
+     * @param buffer
+     * @param baseUri
+     * @throws IOException
+     */
+    static org.jsoup.nodes.Document parse(ByteBuffer buffer, String baseUri) throws IOException {
+        ByteBuffer input = buffer.duplicate();
+        Charset charset = detectCharset(input);
+
+        try (InputStream is = new ByteBufferInputStream(input)) {
+            return Jsoup.parse(is, charset.name(), baseUri);
+        }
+    }
+
+    /**
+     * Detect the charset from a byte order mark, which is skipped, or from a meta tag near the
+     * start of the document. Defaults to UTF-8.
+     *
+     * @param buffer positioned at the start of the document
+     */
+    static Charset detectCharset(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (startsWith(buffer, 0xEF, 0xBB, 0xBF)) {
+            buffer.position(start + 3);
+            return StandardCharsets.UTF_8;
+        }
+
+        if (startsWith(buffer, 0xFE, 0xFF)) {
+            buffer.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+
+        if (startsWith(buffer, 0xFF, 0xFE)) {
+            buffer.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        byte[] head = new byte[Math.min(SNIFF_LENGTH, buffer.remaining())];
+        buffer.duplicate().get(head);
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // unknown or unsupported charset name, fall through to the default
+            }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int... bom) {
+        if (buffer.remaining() < bom.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bom.length; i++) {
+            if ((buffer.get(buffer.position() + i) & 0xFF) != bom[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** Reads a buffer's remaining bytes without copying them. */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.metrics.CountingOutputStream;
+import net.ljcomputing.htmltopdf.metrics.PipelineMetrics;
+import net.ljcomputing.htmltopdf.model.MemoryPolicy;
+import net.ljcomputing.htmltopdf.model.OptimizationReport;
+import net.ljcomputing.htmltopdf.service.PdfOptimizationService;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDAbstractPattern;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Structural clean-up of a finished PDF. Content streams of pages, form XObjects, tiling patterns
+ * and annotation appearances are scanned for the XObjects and fonts they use; resource
+ * dictionaries shared by several of them keep the union. Documents that already carry a
+ * signature are left alone, since the full save the changes need would break it.
+ */
+@Service
+@Slf4j
+public class PdfOptimizationServiceImpl implements PdfOptimizationService {
+    private static final COSName TYPE3 = COSName.getPDFName("Type3");
+
+    @Value("${app.optimizer.minCompressBytes:64}")
+    private int minCompressBytes;
+
+    @Autowired private MemoryPolicy memoryPolicy;
+
+    @Autowired private PipelineMetrics metrics;
+
+    @Override
+    public OptimizationReport optimize(PDDocument document) throws IOException {
+        OptimizationReport report = new OptimizationReport();
+
+        if (!document.getSignatureDictionaries().isEmpty()) {
+            log.debug("not optimizing a signed document");
+            return report;
+        }
+
+        clean(document, report);
+        // nothing is written here, so the saving can only be estimated
+        metrics.recordOutputSize("optimizer-estimated", report.getBytesSaved());
+        return report;
+    }
+
+    @Override
+    public OptimizationReport optimize(byte[] pdf, OutputStream optimized) throws IOException {
+        OptimizationReport report = new OptimizationReport();
+        report.setBytesBefore(pdf.length);
+
+        try (PDDocument document =
+                metrics.record(
+                        PipelineMetrics.PDF_LOAD,
+                        () ->
+                                PDDocument.load(
+                                        pdf, "", null, null, memoryPolicy.forSize(pdf.length)))) {
+            if (!document.getSignatureDictionaries().isEmpty()) {
+                // a full save would invalidate the existing signatures
+                log.debug("passing a signed document through unchanged");
+                optimized.write(pdf);
+                report.setBytesAfter(pdf.length);
+                return report;
+            }
+
+            clean(document, report);
+            CountingOutputStream counting = new CountingOutputStream(optimized);
+            document.save(counting);
+            report.setBytesAfter(counting.getCount());
+            report.setBytesSaved(pdf.length - counting.getCount());
+        }
+
+        metrics.recordOutputSize("optimizer-saved", report.getBytesSaved());
+        log.debug("optimized {} to {} bytes: {}", pdf.length, report.getBytesAfter(), report);
+        return report;
+    }
+
+    /**
+     * Apply every optimization to an unsigned document, estimating the bytes saved.
+     *
+     * @param document
+     * @param report
+     * @throws IOException
+     */
+    private void clean(PDDocument document, OptimizationReport report) throws IOException {
+        Map<COSDictionary, Usage> usages = new IdentityHashMap<>();
+        Set<COSStream> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (PDPage page : document.getPages()) {
+            if (page.getResources() != null) {
+                visit(page, page.getResources(), usages, visited);
+            }
+
+            for (PDAnnotation annotation : page.getAnnotations()) {
+                PDAppearanceStream appearance = annotation.getNormalAppearanceStream();
+
+                if (appearance != null && appearance.getResources() != null) {
+                    visit(appearance, appearance.getResources(), usages, visited);
+                }
+            }
+        }
+
+        for (Map.Entry<COSDictionary, Usage> entry : usages.entrySet()) {
+            removeUnused(entry.getKey(), entry.getValue(), report);
+        }
+
+        mergeDuplicates(usages.keySet(), report);
+        compress(document, report);
+    }
+
+    /**
+     * Record the XObjects and fonts a content stream uses, descending into the form XObjects and
+     * tiling patterns it draws.
+     *
+     * @param content
+     * @param resources the resources the content is drawn with
+     * @param usages
+     * @param visited content streams already scanned
+     * @throws IOException
+     */
+    private void visit(
+            PDContentStream content,
+            PDResources resources,
+            Map<COSDictionary, Usage> usages,
+            Set<COSStream> visited)
+            throws IOException {
+        Usage usage = usages.computeIfAbsent(resources.getCOSObject(), k -> new Usage());
+        PDFStreamParser parser = new PDFStreamParser(content);
+        COSName operand = null;
+        Object token;
+
+        while ((token = parser.parseNextToken()) != null) {
+            if (token instanceof COSName) {
+                operand = (COSName) token;
+            } else if (token instanceof Operator) {
+                String operator = ((Operator) token).getName();
+
+                if (operand != null && operator.equals("Do")) {
+                    usage.xobjects.add(operand);
+                } else if (operand != null && operator.equals("Tf")) {
+                    usage.fonts.add(operand);
+                }
+
+                operand = null;
+            }
+        }
+
+        for (COSName name : usage.xobjects) {
+            PDXObject xobject = resources.getXObject(name);
+
+            if (xobject instanceof PDFormXObject && visited.add(xobject.getCOSObject())) {
+                PDFormXObject form = (PDFormXObject) xobject;
+                PDResources own = form.getResources();
+                visit(form, own != null ? own : resources, usages, visited);
+            }
+        }
+
+        for (COSName name : resources.getPatternNames()) {
+            PDAbstractPattern pattern = resources.getPattern(name);
+
+            if (pattern instanceof PDTilingPattern
+                    && visited.add((COSStream) pattern.getCOSObject())) {
+                PDTilingPattern tiling = (PDTilingPattern) pattern;
+                PDResources own = tiling.getResources();
+                visit(tiling, own != null ? own : resources, usages, visited);
+            }
+        }
+
+        COSDictionary fonts = dictionary(resources.getCOSObject(), COSName.FONT);
+
+        for (COSName name : resources.getFontNames()) {
+            COSBase value = fonts == null ? null : fonts.getDictionaryObject(name);
+
+            if (value instanceof COSDictionary
+                    && TYPE3.equals(((COSDictionary) value).getCOSName(COSName.SUBTYPE))) {
+                // Type 3 glyphs may draw with the page's resources
+                usage.unsafe = true;
+            }
+        }
+    }
+
+    /**
+     * Drop the XObjects and fonts of a resource dictionary that nothing drawn with it uses.
+     *
+     * @param resources
+     * @param usage
+     * @param report
+     */
+    private void removeUnused(COSDictionary resources, Usage usage, OptimizationReport report) {
+        if (usage.unsafe) {
+            return;
+        }
+
+        removeUnused(dictionary(resources, COSName.XOBJECT), usage.xobjects, report);
+        removeUnused(dictionary(resources, COSName.FONT), usage.fonts, report);
+    }
+
+    private void removeUnused(COSDictionary names, Set<COSName> used, OptimizationReport report) {
+        if (names == null) {
+            return;
+        }
+
+        for (COSName name : new ArrayList<>(names.keySet())) {
+            if (!used.contains(name)) {
+                COSBase value = names.getDictionaryObject(name);
+
+                if (value instanceof COSStream) {
+                    report.setBytesSaved(report.getBytesSaved() + ((COSStream) value).getLength());
+                }
+
+                names.removeItem(name);
+                report.setUnusedResources(report.getUnusedResources() + 1);
+            }
+        }
+    }
+
+    /**
+     * Point every XObject entry with the same content and dictionary at one stream, so the
+     * duplicates are not written.
+     *
+     * @param resources
+     * @param report
+     * @throws IOException
+     */
+    private void mergeDuplicates(Set<COSDictionary> resources, OptimizationReport report)
+            throws IOException {
+        Map<String, COSStream> canonical = new HashMap<>();
+        Map<COSStream, String> keys = new IdentityHashMap<>();
+        Set<COSStream> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (COSDictionary dictionary : resources) {
+            COSDictionary xobjects = dictionary(dictionary, COSName.XOBJECT);
+
+            if (xobjects == null) {
+                continue;
+            }
+
+            for (COSName name : new ArrayList<>(xobjects.keySet())) {
+                COSBase value = xobjects.getDictionaryObject(name);
+
+                if (!(value instanceof COSStream)) {
+                    continue;
+                }
+
+                COSStream stream = (COSStream) value;
+                String key = key(stream, keys);
+                COSStream first = canonical.putIfAbsent(key, stream);
+
+                if (first != null && first != stream) {
+                    xobjects.setItem(name, first);
+
+                    if (merged.add(stream)) {
+                        report.setDuplicateStreams(report.getDuplicateStreams() + 1);
+                        report.setBytesSaved(report.getBytesSaved() + stream.getLength());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flate compress streams written without a filter. Metadata stays readable as plain XML.
+     *
+     * @param document
+     * @param report
+     * @throws IOException
+     */
+    private void compress(PDDocument document, OptimizationReport report) throws IOException {
+        List<COSStream> streams = new ArrayList<>();
+        collectStreams(
+                document.getDocument().getTrailer(),
+                Collections.newSetFromMap(new IdentityHashMap<>()),
+                streams);
+
+        for (COSStream stream : streams) {
+            if (stream.getFilters() != null
+                    || COSName.METADATA.equals(stream.getCOSName(COSName.TYPE))
+                    || COSName.XREF.equals(stream.getCOSName(COSName.TYPE))
+                    || COSName.OBJ_STM.equals(stream.getCOSName(COSName.TYPE))
+                    || stream.getLength() < minCompressBytes) {
+                continue;
+            }
+
+            long before = stream.getLength();
+            byte[] data;
+
+            try (InputStream is = stream.createRawInputStream()) {
+                data = IOUtils.toByteArray(is);
+            }
+
+            try (OutputStream os = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                os.write(data);
+            }
+
+            report.setCompressedStreams(report.getCompressedStreams() + 1);
+            report.setBytesSaved(report.getBytesSaved() + before - stream.getLength());
+        }
+    }
+
+    private static void collectStreams(COSBase base, Set<COSBase> visited, List<COSStream> out) {
+        COSBase value = base instanceof COSObject ? ((COSObject) base).getObject() : base;
+
+        if (value == null || !visited.add(value)) {
+            return;
+        }
+
+        if (value instanceof COSStream) {
+            out.add((COSStream) value);
+        }
+
+        if (value instanceof COSDictionary) {
+            for (COSBase item : ((COSDictionary) value).getValues()) {
+                collectStreams(item, visited, out);
+            }
+        } else if (value instanceof COSArray) {
+            for (COSBase item : (COSArray) value) {
+                collectStreams(item, visited, out);
+            }
+        }
+    }
+
+    /**
+     * Content hash of a stream: its encoded data and its dictionary, with nested streams such as
+     * soft masks hashed in turn.
+     *
+     * @param stream
+     * @param keys hashes computed so far
+     * @throws IOException
+     */
+    private static String key(COSStream stream, Map<COSStream, String> keys) throws IOException {
+        String key = keys.get(stream);
+
+        if (key != null) {
+            return key;
+        }
+
+        MessageDigest digest = sha256();
+
+        try (InputStream is = stream.createRawInputStream();
+                OutputStream os =
+                        new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            IOUtils.copy(is, os);
+        }
+
+        digest.update(canonical(stream, keys, 0).getBytes(StandardCharsets.UTF_8));
+        key = Base64.getEncoder().encodeToString(digest.digest());
+        keys.put(stream, key);
+        return key;
+    }
+
+    private static String canonical(COSBase base, Map<COSStream, String> keys, int depth)
+            throws IOException {
+        COSBase value = base instanceof COSObject ? ((COSObject) base).getObject() : base;
+
+        if (depth > 8) {
+            return "?";
+        } else if (value instanceof COSStream && depth > 0) {
+            return "stream:" + key((COSStream) value, keys);
+        } else if (value instanceof COSDictionary) {
+            Map<String, String> entries = new TreeMap<>();
+
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    String item = canonical(entry.getValue(), keys, depth + 1);
+                    entries.put(entry.getKey().getName(), item);
+                }
+            }
+
+            return entries.toString();
+        } else if (value instanceof COSArray) {
+            List<String> items = new ArrayList<>();
+
+            for (COSBase item : (COSArray) value) {
+                items.add(canonical(item, keys, depth + 1));
+            }
+
+            return items.toString();
+        }
+
+        return String.valueOf(value);
+    }
+
+    private static COSDictionary dictionary(COSDictionary parent, COSName key) {
+        COSBase value = parent.getDictionaryObject(key);
+        return value instanceof COSDictionary ? (COSDictionary) value : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Resource names used by the content drawn with one resource dictionary. */
+    private static class Usage {
+        private final Set<COSName> xobjects = new HashSet<>();
+        private final Set<COSName> fonts = new HashSet<>();
+        private boolean unsafe;
+    }
+}
@@ -20,127 +20,324 @@ James G Willmore - LJ Computing - (C) 2023
 */
 package net.ljcomputing.htmltopdf.service.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
-import java.security.cert.X509Certificate;
-import java.util.Arrays;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.budget.RenderContext;
+import net.ljcomputing.htmltopdf.metrics.CountingOutputStream;
+import net.ljcomputing.htmltopdf.metrics.PipelineMetrics;
+import net.ljcomputing.htmltopdf.model.MemoryPolicy;
 import net.ljcomputing.htmltopdf.model.SignatureCredentials;
+import net.ljcomputing.htmltopdf.model.SignatureLayout;
 import net.ljcomputing.htmltopdf.service.KeyStoreService;
 import net.ljcomputing.htmltopdf.service.PdfSigningService;
-import org.apache.pdfbox.cos.COSName;
+import net.ljcomputing.htmltopdf.service.TimeStampService;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.ExternalSigningSupport;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
-import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
-import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
-import org.bouncycastle.cert.jcajce.JcaCertStore;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSSignedData;
-import org.bouncycastle.cms.CMSSignedDataGenerator;
 import org.bouncycastle.cms.CMSTypedData;
-import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
-import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 public class PdfSigningServiceImpl implements PdfSigningService, SignatureInterface {
+    /** Head room for the incremental update written after the original document bytes. */
+    private static final int SIGNATURE_PADDING = 64 * 1024;
+
     @Autowired private KeyStoreService keyStoreService;
 
+    @Autowired private PipelineMetrics metrics;
+
+    @Autowired private MemoryPolicy memoryPolicy;
+
+    @Autowired private SignatureLayout signatureLayout;
+
+    @Autowired private TimeStampService timeStampService;
+
+    @Value("${app.signing.external:false}")
+    private boolean externalSigning;
+
+    private final Map<String, CmsSignerContext> signerContexts = new ConcurrentHashMap<>();
+
     @Override
     public void signPdf(Path pdf, PDSignature signature) {
-        Path outPath =
-                Path.of(
-                        "/" + pdf.subpath(0, pdf.getNameCount() - 1).toString(),
-                        pdf.getFileName().toString().replace(".pdf", "-signed.pdf"));
-
-        try (FileOutputStream fos = new FileOutputStream(outPath.toFile())) {
-            PDPage signaturePage = new PDPage();
-            PDDocument document = PDDocument.load(pdf.toFile(), "");
-
-            PDFont font = PDType1Font.HELVETICA;
-            PDResources resources = new PDResources();
-            resources.put(COSName.HELV, font);
-
-            PDAcroForm acroForm = new PDAcroForm(document);
-            document.getDocumentCatalog().setAcroForm(acroForm);
-            acroForm.setDefaultResources(resources);
-
-            String defaultAppearanceString = "/Helv 0 Tf 0 g";
-            acroForm.setDefaultAppearance(defaultAppearanceString);
-
-            PDSignatureField signatureField = new PDSignatureField(acroForm);
-            signatureField.getCOSObject().setItem(COSName.V, signature);
-            PDAnnotationWidget widget = signatureField.getWidgets().get(0);
-            PDRectangle rect = new PDRectangle(50, 650, 200, 50);
-            widget.setRectangle(rect);
-            widget.setPage(signaturePage);
-            widget.setPrinted(true);
-            signaturePage.getAnnotations().add(widget);
-            acroForm.getFields().add(signatureField);
-
-            document.addPage(signaturePage);
-
-            SignatureOptions signatureOptions = new SignatureOptions();
-            signatureOptions.setPreferredSignatureSize(SignatureOptions.DEFAULT_SIGNATURE_SIZE * 2);
-            document.addSignature(signature, this, signatureOptions);
-            document.saveIncremental(fos);
-
-            log.debug("{}", document.getNumberOfPages());
-            document.close();
+        signPdf(pdf, signature, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    @Override
+    public void signPdf(Path pdf, PDSignature signature, String keystore) {
+        Path outPath = signedPath(pdf);
+
+        // load before opening the output, so a failed load never leaves an empty file behind
+        try (PDDocument document =
+                        metrics.record(
+                                PipelineMetrics.PDF_LOAD,
+                                () ->
+                                        PDDocument.load(
+                                                pdf.toFile(),
+                                                "",
+                                                memoryPolicy.forSize(pdf.toFile().length())));
+                FileOutputStream fos = new FileOutputStream(outPath.toFile())) {
+            addSignature(document, signature, fos, keystore);
         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            log.error("Error signing {}: ", pdf, e);
+        }
+    }
+
+    @Override
+    public void signPdf(Path pdf, OutputStream signedPdf, PDSignature signature, String keystore)
+            throws IOException {
+        try (PDDocument document =
+                metrics.record(
+                        PipelineMetrics.PDF_LOAD,
+                        () ->
+                                PDDocument.load(
+                                        pdf.toFile(),
+                                        "",
+                                        memoryPolicy.forSize(pdf.toFile().length())))) {
+            addSignature(document, signature, signedPdf, keystore);
+        }
+    }
+
+    /**
+     * The path a signed copy of a document is written to: a sibling named after the document
+     * without its .pdf extension, in any case, followed by -signed.pdf.
+     *
+     * @param pdf
+     * @throws IllegalArgumentException when that would be the document itself
+     */
+    public static Path signedPath(Path pdf) {
+        String name = pdf.getFileName().toString();
+        String stem =
+                name.toLowerCase(Locale.ROOT).endsWith(".pdf")
+                        ? name.substring(0, name.length() - 4)
+                        : name;
+        Path signed = pdf.resolveSibling(stem + "-signed.pdf");
+
+        if (signed.toAbsolutePath().normalize().equals(pdf.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("Signed output would overwrite " + pdf);
+        }
+
+        return signed;
+    }
+
+    @Override
+    public void signPdf(InputStream pdf, OutputStream signedPdf, PDSignature signature)
+            throws IOException {
+        signPdf(pdf, signedPdf, signature, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    @Override
+    public void signPdf(
+            InputStream pdf, OutputStream signedPdf, PDSignature signature, String keystore)
+            throws IOException {
+        try (PDDocument document =
+                metrics.record(
+                        PipelineMetrics.PDF_LOAD,
+                        () -> PDDocument.load(pdf, memoryPolicy.forSize(-1)))) {
+            addSignature(document, signature, signedPdf, keystore);
+        }
+    }
+
+    @Override
+    public byte[] signPdf(byte[] pdf, PDSignature signature) throws IOException {
+        return signPdf(pdf, signature, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    @Override
+    public byte[] signPdf(byte[] pdf, PDSignature signature, String keystore)
+            throws IOException {
+        ByteArrayOutputStream signedPdf = new ByteArrayOutputStream(pdf.length + SIGNATURE_PADDING);
+
+        try (PDDocument document =
+                metrics.record(
+                        PipelineMetrics.PDF_LOAD,
+                        () ->
+                                PDDocument.load(
+                                        pdf, "", null, null, memoryPolicy.forSize(pdf.length)))) {
+            addSignature(document, signature, signedPdf, keystore);
+        }
+
+        return signedPdf.toByteArray();
+    }
+
+    /**
+     * Stamp the signature layout onto a loaded document, sign it and write the incremental
+     * update to the output stream.
+     *
+     * @param document
+     * @param signature
+     * @param signedPdf
+     * @param keystore registered name of the signing identity
+     * @throws IOException
+     */
+    private void addSignature(
+            PDDocument document, PDSignature signature, OutputStream signedPdf, String keystore)
+            throws IOException {
+        signatureLayout.apply(document, signature);
+
+        SignatureOptions signatureOptions = new SignatureOptions();
+        signatureOptions.setPreferredSignatureSize(SignatureOptions.DEFAULT_SIGNATURE_SIZE * 2);
+        CountingOutputStream counting = new CountingOutputStream(signedPdf);
+
+        if (externalSigning) {
+            document.addSignature(signature, signatureOptions);
+            signExternally(document, counting, keystore);
+        } else {
+            document.addSignature(
+                    signature, content -> sign(content, keystore), signatureOptions);
+            metrics.record(
+                    PipelineMetrics.INCREMENTAL_SAVE,
+                    () -> {
+                        document.saveIncremental(counting);
+                        return null;
+                    });
+        }
+
+        metrics.recordOutputSize("signed", counting.getCount());
+
+        log.debug("{}", document.getNumberOfPages());
+    }
+
+    /**
+     * Write the incremental update and sign only the digest of the signed byte range. PDFBox holds
+     * the whole update back until the signature is set, so there is no output to hash while it is
+     * saved: the byte range is read once from the loaded document and the in-memory update. The
+     * private key operation runs on the calling thread.
+     *
+     * @param document
+     * @param signedPdf
+     * @param keystore
+     * @throws IOException
+     */
+    private void signExternally(PDDocument document, OutputStream signedPdf, String keystore)
+            throws IOException {
+        ExternalSigningSupport external =
+                metrics.record(
+                        PipelineMetrics.INCREMENTAL_SAVE,
+                        () -> document.saveIncrementalForExternalSigning(signedPdf));
+        byte[] digest = digest(external.getContent());
+
+        RenderContext.check();
+
+        try {
+            CmsSignerContext context = signerContext(keystore);
+            CMSSignedData signedData =
+                    metrics.record(PipelineMetrics.SIGNATURE, () -> context.signDigest(digest));
+            external.setSignature(timeStamp(signedData).getEncoded());
+        } catch (GeneralSecurityException | CMSException | OperatorCreationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * SHA-256 of a stream, read in fixed size blocks.
+     *
+     * @param content
+     * @throws IOException
+     */
+    private static byte[] digest(InputStream content) throws IOException {
+        try (InputStream is = content) {
+            MessageDigest md = MessageDigest.getInstance(CmsSignerContext.DIGEST_ALGORITHM);
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = is.read(buffer)) != -1) {
+                RenderContext.check();
+                md.update(buffer, 0, read);
+            }
+
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
         }
     }
 
     @Override
     public byte[] sign(InputStream content) throws IOException {
         // cannot be done private (interface)
+        return sign(content, KeyStoreService.DEFAULT_KEYSTORE);
+    }
+
+    /**
+     * Sign the content with a registered identity.
+     *
+     * @param content
+     * @param keystore
+     * @throws IOException
+     */
+    private byte[] sign(InputStream content, String keystore) throws IOException {
+        RenderContext.check();
+
         try {
-            SignatureCredentials signatureCredentials = keyStoreService.retrieveCredentials();
-            CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-            X509Certificate cert = (X509Certificate) signatureCredentials.getCertificateChain()[0];
-            ContentSigner sha1Signer =
-                    new JcaContentSignerBuilder("SHA256WithRSA")
-                            .build(signatureCredentials.getPrivateKey());
-            gen.addSignerInfoGenerator(
-                    new JcaSignerInfoGeneratorBuilder(
-                                    new JcaDigestCalculatorProviderBuilder().build())
-                            .build(sha1Signer, cert));
-            gen.addCertificates(
-                    new JcaCertStore(Arrays.asList(signatureCredentials.getCertificateChain())));
             CMSProcessableInputStream msg = new CMSProcessableInputStream(content);
-            CMSSignedData signedData = gen.generate(msg, false);
-            // if (tsaUrl != null && tsaUrl.length() > 0) {
-            //     ValidationTimeStamp validation = new ValidationTimeStamp(tsaUrl);
-            //     signedData = validation.addSignedTimeStamp(signedData);
-            // }
-            return signedData.getEncoded();
+            CmsSignerContext context = signerContext(keystore);
+            CMSSignedData signedData =
+                    metrics.record(PipelineMetrics.SIGNATURE, () -> context.sign(msg));
+            return timeStamp(signedData).getEncoded();
         } catch (GeneralSecurityException | CMSException | OperatorCreationException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Add time stamps to a signature, recording the wait for the authority.
+     *
+     * @param signedData
+     * @throws IOException
+     */
+    private CMSSignedData timeStamp(CMSSignedData signedData) throws IOException {
+        return metrics.record(
+                PipelineMetrics.TIMESTAMP, () -> timeStampService.addTimeStampsAndWait(signedData));
+    }
+
+    /**
+     * The signer setup for a key store's current credentials, rebuilt only when the key store
+     * service hands out different credentials.
+     *
+     * @param keystore
+     * @throws GeneralSecurityException
+     * @throws OperatorCreationException
+     */
+    private CmsSignerContext signerContext(String keystore)
+            throws GeneralSecurityException, OperatorCreationException {
+        SignatureCredentials credentials = keyStoreService.retrieveCredentials(keystore);
+
+        if (!credentials.isValid()) {
+            throw new GeneralSecurityException(
+                    "signature credentials are not available for " + keystore);
+        }
+
+        CmsSignerContext context = signerContexts.get(keystore);
+
+        if (context == null || context.getCredentials() != credentials) {
+            context = new CmsSignerContext(credentials);
+            signerContexts.put(keystore, context);
+        }
+
+        return context;
+    }
+
     class CMSProcessableInputStream implements CMSTypedData {
         private final InputStream in;
         private final ASN1ObjectIdentifier contentType;
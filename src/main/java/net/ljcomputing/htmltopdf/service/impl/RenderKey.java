@@ -0,0 +1,138 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import com.openhtmltopdf.extend.FSStreamFactory;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.w3c.dom.Document;
+
+/**
+ * Content hash of a render: the serialized document, its base URI, the bytes of the images and
+ * stylesheets it references, the render options and the versions of the renderer and PDFBox.
+ * Resources pulled in by external stylesheets are not part of the key.
+ */
+final class RenderKey {
+    private static final TransformerFactory TRANSFORMERS = TransformerFactory.newInstance();
+    private static final String RENDERER =
+            version(PdfRendererBuilder.class) + ";" + version(PDDocument.class);
+
+    private RenderKey() {}
+
+    /**
+     * Compute the key.
+     *
+     * @param document
+     * @param baseUri
+     * @param options anything else that changes the output
+     * @param streamFactory the renderer's resource source, so the hashed bytes are the rendered
+     *     ones
+     * @throws IOException
+     */
+    static String of(
+            Document document, String baseUri, String options, FSStreamFactory streamFactory)
+            throws IOException {
+        MessageDigest digest = sha256();
+        update(digest, RENDERER);
+        update(digest, options);
+        update(digest, baseUri == null ? "" : baseUri);
+
+        try (OutputStream os = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            Transformer transformer;
+
+            synchronized (TRANSFORMERS) {
+                transformer = TRANSFORMERS.newTransformer();
+            }
+
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.transform(new DOMSource(document), new StreamResult(os));
+        } catch (TransformerException e) {
+            throw new IOException("Error serializing document", e);
+        }
+
+        for (String url : Subresources.urls(document, baseUri)) {
+            update(digest, url);
+
+            try (InputStream is = streamFactory.getUrl(url).getStream()) {
+                if (is != null) {
+                    IOUtils.copy(
+                            is, new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+                }
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * The implementation version of a library, or the jar it was loaded from, whose name carries
+     * the version, when the manifest has none.
+     *
+     * @param type a class of the library
+     */
+    private static String version(Class<?> type) {
+        String version = type.getPackage().getImplementationVersion();
+
+        if (version == null && type.getProtectionDomain().getCodeSource() != null) {
+            version = String.valueOf(type.getProtectionDomain().getCodeSource().getLocation());
+        }
+
+        return type.getName() + "=" + version;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return sb.toString();
+    }
+}
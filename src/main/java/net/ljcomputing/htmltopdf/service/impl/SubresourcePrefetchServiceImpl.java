@@ -0,0 +1,258 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.cache.CachedResource;
+import net.ljcomputing.htmltopdf.cache.CachingStreamFactory;
+import net.ljcomputing.htmltopdf.cache.ResourceCache;
+import net.ljcomputing.htmltopdf.model.PrefetchReport;
+import net.ljcomputing.htmltopdf.service.SubresourcePrefetchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+@Service
+@Slf4j
+public class SubresourcePrefetchServiceImpl implements SubresourcePrefetchService {
+    @Value("${app.prefetch.maxPerHost:6}")
+    private int maxPerHost;
+
+    @Value("${app.prefetch.deadlineMs:10000}")
+    private long deadlineMs;
+
+    @Autowired private ResourceCache resourceCache;
+
+    @Autowired
+    @Qualifier("prefetchExecutor")
+    private Executor prefetchExecutor;
+
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private HttpClient httpClient;
+
+    @PostConstruct
+    void initialize() {
+        httpClient =
+                HttpClient.newBuilder()
+                        .connectTimeout(Duration.ofMillis(deadlineMs))
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .build();
+    }
+
+    @Override
+    public PrefetchReport prefetch(Document document, String baseUri) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        PrefetchReport report = new PrefetchReport();
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        int scheduled = 0;
+        Set<String> seen = new HashSet<>(Subresources.httpUrls(document, baseUri));
+        List<String> wave = new ArrayList<>(seen);
+
+        while (!wave.isEmpty() && remaining(deadline) > 0) {
+            Map<String, CachedResource> stylesheets = new ConcurrentHashMap<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+            for (String url : wave) {
+                report.setRequested(report.getRequested() + 1);
+
+                CachedResource cached = resourceCache.get(url);
+
+                if (cached != null && resourceCache.isFresh(cached)) {
+                    report.setAlreadyCached(report.getAlreadyCached() + 1);
+
+                    if (isStylesheet(url, cached)) {
+                        stylesheets.put(url, cached);
+                    }
+
+                    continue;
+                }
+
+                futures.add(
+                        CompletableFuture.runAsync(
+                                () -> {
+                                    CachedResource body;
+
+                                    try {
+                                        body = fetch(url, deadline);
+                                    } catch (RuntimeException e) {
+                                        // a bad reference must not cost the other resources
+                                        log.debug("Error prefetching {}: {}", url, e.toString());
+                                        body = null;
+                                    }
+
+                                    if (body == null) {
+                                        failed.incrementAndGet();
+                                    } else {
+                                        resourceCache.put(url, body);
+                                        fetched.incrementAndGet();
+                                        bytes.addAndGet(body.getSize());
+
+                                        if (isStylesheet(url, body)) {
+                                            stylesheets.put(url, body);
+                                        }
+                                    }
+                                },
+                                prefetchExecutor));
+            }
+
+            scheduled += futures.size();
+
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                        .get(Math.max(0, remaining(deadline)), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.debug("prefetch for {} stopped at deadline", baseUri);
+                break;
+            } catch (ExecutionException e) {
+                log.debug("prefetch for {} failed: {}", baseUri, e.getCause().toString());
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            wave = new ArrayList<>();
+
+            for (Map.Entry<String, CachedResource> stylesheet : stylesheets.entrySet()) {
+                CachedResource resource = stylesheet.getValue();
+                String css =
+                        new String(resource.getBytes(), CachingStreamFactory.charset(resource));
+
+                for (String url : Subresources.httpCssUrls(css, stylesheet.getKey())) {
+                    if (seen.add(url)) {
+                        wave.add(url);
+                    }
+                }
+            }
+        }
+
+        report.setFetched(fetched.get());
+        report.setFailed(failed.get());
+        report.setTimedOut(scheduled - fetched.get() - failed.get());
+        report.setBytes(bytes.get());
+        report.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.debug("prefetched {}: {}", baseUri, report);
+
+        return report;
+    }
+
+    /**
+     * Fetch one resource, waiting for a per host permit and giving up at the deadline.
+     *
+     * @param url
+     * @param deadline {@link System#nanoTime()} deadline
+     * @return the body and its validators, or null when the resource could not be fetched in time
+     */
+    private CachedResource fetch(String url, long deadline) {
+        Semaphore permits =
+                hostPermits.computeIfAbsent(
+                        URI.create(url).getHost(), host -> new Semaphore(maxPerHost));
+
+        try {
+            if (!permits.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+
+            try {
+                long remaining = remaining(deadline);
+
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                HttpRequest request =
+                        HttpRequest.newBuilder(URI.create(url))
+                                .timeout(Duration.ofNanos(remaining))
+                                .GET()
+                                .build();
+                HttpResponse<byte[]> response =
+                        httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+                if (response.statusCode() != 200) {
+                    log.debug("prefetch of {} returned {}", url, response.statusCode());
+                    return null;
+                }
+
+                return new CachedResource(
+                        response.body(),
+                        response.headers().firstValue("Content-Type").orElse(null),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null));
+            } finally {
+                permits.release();
+            }
+        } catch (IOException e) {
+            log.debug("Error prefetching {}: {}", url, e.toString());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Whether a resource is a stylesheet whose own references are worth fetching.
+     *
+     * @param url
+     * @param resource
+     */
+    private static boolean isStylesheet(String url, CachedResource resource) {
+        String contentType = resource.getContentType();
+
+        if (contentType != null) {
+            return contentType.toLowerCase(Locale.ROOT).startsWith("text/css");
+        }
+
+        return URI.create(url).getPath().toLowerCase(Locale.ROOT).endsWith(".css");
+    }
+
+    private static long remaining(long deadline) {
+        return deadline - System.nanoTime();
+    }
+}
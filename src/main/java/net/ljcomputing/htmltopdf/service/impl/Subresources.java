@@ -0,0 +1,178 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/** Finds the resources a document pulls in while it is rendered. */
+@Slf4j
+final class Subresources {
+    private static final Pattern CSS_URL =
+            Pattern.compile(
+                    "url\\(\\s*['\"]?([^'\")]+)['\"]?\\s*\\)"
+                            + "|@import\\s+['\"]([^'\"]+)['\"]");
+
+    private Subresources() {}
+
+    /**
+     * Absolute URLs of images, linked stylesheets and the url() and @import references in style
+     * elements and style attributes, in document order and without duplicates. Data URIs are
+     * skipped. References inside linked stylesheets come from {@link #cssUrls} once the stylesheet
+     * has been fetched.
+     *
+     * @param document
+     * @param baseUri used to resolve relative references
+     */
+    static Set<String> urls(Document document, String baseUri) {
+        Set<String> references = new LinkedHashSet<>();
+        NodeList images = document.getElementsByTagName("img");
+
+        for (int i = 0; i < images.getLength(); i++) {
+            references.add(((Element) images.item(i)).getAttribute("src"));
+        }
+
+        NodeList links = document.getElementsByTagName("link");
+
+        for (int i = 0; i < links.getLength(); i++) {
+            Element link = (Element) links.item(i);
+
+            if (link.getAttribute("rel").toLowerCase(Locale.ROOT).contains("stylesheet")) {
+                references.add(link.getAttribute("href"));
+            }
+        }
+
+        NodeList styles = document.getElementsByTagName("style");
+
+        for (int i = 0; i < styles.getLength(); i++) {
+            cssReferences(styles.item(i).getTextContent(), references);
+        }
+
+        NodeList elements = document.getElementsByTagName("*");
+
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+
+            if (element.hasAttribute("style")) {
+                cssReferences(element.getAttribute("style"), references);
+            }
+        }
+
+        return resolve(references, baseUri);
+    }
+
+    /**
+     * Absolute URLs of the url() and @import references in a stylesheet, without duplicates. Data
+     * URIs are skipped.
+     *
+     * @param css
+     * @param baseUri the stylesheet's own URL, against which its references resolve
+     */
+    static Set<String> cssUrls(String css, String baseUri) {
+        Set<String> references = new LinkedHashSet<>();
+        cssReferences(css, references);
+        return resolve(references, baseUri);
+    }
+
+    /**
+     * As {@link #urls(Document, String)}, restricted to http and https URLs with a host.
+     *
+     * @param document
+     * @param baseUri
+     */
+    static Set<String> httpUrls(Document document, String baseUri) {
+        return http(urls(document, baseUri));
+    }
+
+    /**
+     * As {@link #cssUrls(String, String)}, restricted to http and https URLs with a host.
+     *
+     * @param css
+     * @param baseUri
+     */
+    static Set<String> httpCssUrls(String css, String baseUri) {
+        return http(cssUrls(css, baseUri));
+    }
+
+    private static void cssReferences(String css, Set<String> references) {
+        Matcher matcher = CSS_URL.matcher(css);
+
+        while (matcher.find()) {
+            references.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+    }
+
+    private static Set<String> resolve(Set<String> references, String baseUri) {
+        Set<String> urls = new LinkedHashSet<>();
+        URI base = baseUri == null ? null : URI.create(baseUri);
+
+        for (String reference : references) {
+            String trimmed = reference.trim();
+
+            if (trimmed.isEmpty() || trimmed.startsWith("data:")) {
+                continue;
+            }
+
+            try {
+                URI uri = base == null ? URI.create(trimmed) : base.resolve(trimmed);
+
+                if (uri.getScheme() != null) {
+                    urls.add(uri.toString());
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Skipping unresolvable reference {}", trimmed);
+            }
+        }
+
+        return urls;
+    }
+
+    private static Set<String> http(Set<String> all) {
+        Set<String> urls = new LinkedHashSet<>();
+
+        for (String url : all) {
+            URI uri;
+
+            try {
+                uri = URI.create(url);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+
+            // a URL such as http:///x has no host to fetch from
+            if ((scheme.equals("http") || scheme.equals("https")) && uri.getHost() != null) {
+                urls.add(url);
+            }
+        }
+
+        return urls;
+    }
+}
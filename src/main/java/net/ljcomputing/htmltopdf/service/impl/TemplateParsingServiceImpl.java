@@ -0,0 +1,148 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import net.ljcomputing.htmltopdf.metrics.PipelineMetrics;
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
+import net.ljcomputing.htmltopdf.service.HtmlSlimmingService;
+import net.ljcomputing.htmltopdf.service.TemplateParsingService;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+@Service
+public class TemplateParsingServiceImpl implements TemplateParsingService {
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${spring.freemarker.suffix:.ftlh}")
+    private String suffix;
+
+    @Autowired private Configuration freemarkerConfiguration;
+
+    @Autowired W3CDom w3cDom;
+
+    @Autowired private PipelineMetrics metrics;
+
+    @Autowired private HtmlSlimmingService htmlSlimmingService;
+
+    @Value("${app.slimming.enabled:false}")
+    private boolean slimmingEnabled;
+
+    @Autowired
+    @Qualifier("templateMergeExecutor")
+    private Executor templateMergeExecutor;
+
+    @Override
+    public Document templateParseDocument(String templateName, Object model, String baseUri)
+            throws IOException {
+        Template template = template(templateName);
+        org.jsoup.nodes.Document doc =
+                metrics.record(
+                        PipelineMetrics.PARSE, () -> mergeAndParse(template, model, baseUri));
+
+        if (slimmingEnabled) {
+            SlimmingReport report =
+                    metrics.record(PipelineMetrics.SLIMMING, () -> htmlSlimmingService.slim(doc));
+            metrics.recordSlimming(report);
+        }
+
+        return metrics.record(PipelineMetrics.W3C_CONVERSION, () -> w3cDom.fromJsoup(doc));
+    }
+
+    /**
+     * Parse the merged template output while it is being written.
+     *
+     * @param template
+     * @param model
+     * @param baseUri
+     * @throws IOException
+     */
+    private org.jsoup.nodes.Document mergeAndParse(Template template, Object model, String baseUri)
+            throws IOException {
+        org.jsoup.nodes.Document doc;
+        CompletableFuture<Void> merge;
+
+        try (PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE)) {
+            PipedOutputStream out = new PipedOutputStream(in);
+            merge =
+                    CompletableFuture.runAsync(
+                            () -> merge(template, model, out), templateMergeExecutor);
+            doc = Jsoup.parse((InputStream) in, StandardCharsets.UTF_8.name(), baseUri);
+        }
+
+        try {
+            merge.join();
+        } catch (CompletionException e) {
+            throw new IOException("Error merging template " + template.getName(), e.getCause());
+        }
+
+        return doc;
+    }
+
+    /**
+     * The compiled template. FreeMarker's template cache keeps compiled templates and reloads one
+     * when its source changes, subject to the configured update delay.
+     *
+     * @param templateName
+     * @throws IOException
+     */
+    private Template template(String templateName) throws IOException {
+        String name = templateName.contains(".") ? templateName : templateName + suffix;
+        return freemarkerConfiguration.getTemplate(name);
+    }
+
+    /**
+     * Merge the model into the template, writing into the parser's pipe. Closing the pipe, also
+     * on failure, signals end of input to the parser.
+     *
+     * @param template
+     * @param model
+     * @param out
+     */
+    private void merge(Template template, Object model, OutputStream out) {
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            template.process(model, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (TemplateException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.ljcomputing.htmltopdf.service.TimeStampService;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * RFC 3161 client over one shared HTTP client. Requests run asynchronously, so many signatures can
+ * wait on the authority at once; failed requests are retried with exponential backoff and a
+ * circuit breaker stops calls to an authority that keeps failing.
+ */
+@Service
+@Slf4j
+public class TimeStampServiceImpl implements TimeStampService {
+    @Value("${app.tsa.url:}")
+    private String url;
+
+    @Value("${app.tsa.policy:}")
+    private String policy;
+
+    @Value("${app.tsa.timeoutMs:10000}")
+    private long timeoutMs;
+
+    @Value("${app.tsa.retries:2}")
+    private int retries;
+
+    @Value("${app.tsa.backoffMs:250}")
+    private long backoffMs;
+
+    @Value("${app.tsa.failureThreshold:5}")
+    private int failureThreshold;
+
+    @Value("${app.tsa.openMs:30000}")
+    private long openMs;
+
+    @Value("${app.tsa.required:true}")
+    private boolean required;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private HttpClient client;
+
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    void initialize() {
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeoutMs)).build();
+        circuitBreaker = new CircuitBreaker(failureThreshold, openMs);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !url.isEmpty();
+    }
+
+    @Override
+    public CompletableFuture<TimeStampToken> timestamp(byte[] data) {
+        if (!isEnabled()) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("no time stamp authority configured"));
+        }
+
+        CompletableFuture<TimeStampToken> result = new CompletableFuture<>();
+        attempt(sha256(data), 0)
+                .whenComplete(
+                        (token, e) -> {
+                            if (e == null) {
+                                result.complete(token);
+                            } else {
+                                result.completeExceptionally(unwrap(e));
+                            }
+                        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<CMSSignedData> addTimeStamps(CMSSignedData signedData) {
+        if (!isEnabled()) {
+            return CompletableFuture.completedFuture(signedData);
+        }
+
+        List<CompletableFuture<SignerInformation>> stamped = new ArrayList<>();
+
+        for (SignerInformation signer : signedData.getSignerInfos().getSigners()) {
+            stamped.add(timestamp(signer.getSignature()).thenApply(t -> withTimeStamp(signer, t)));
+        }
+
+        return CompletableFuture.allOf(stamped.toArray(new CompletableFuture<?>[0]))
+                .thenApply(
+                        v -> {
+                            List<SignerInformation> signers = new ArrayList<>(stamped.size());
+
+                            for (CompletableFuture<SignerInformation> signer : stamped) {
+                                signers.add(signer.join());
+                            }
+
+                            return CMSSignedData.replaceSigners(
+                                    signedData, new SignerInformationStore(signers));
+                        })
+                .exceptionally(
+                        e -> {
+                            if (required) {
+                                throw new CompletionException(unwrap(e));
+                            }
+
+                            log.warn("Signing without time stamp: {}", unwrap(e).toString());
+                            return signedData;
+                        });
+    }
+
+    @Override
+    public CMSSignedData addTimeStampsAndWait(CMSSignedData signedData) throws IOException {
+        try {
+            return addTimeStamps(signedData).join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof IOException
+                    ? (IOException) cause
+                    : new IOException("Error time stamping signature", cause);
+        }
+    }
+
+    /**
+     * One request to the authority, followed by delayed retries while attempts remain.
+     *
+     * @param imprint
+     * @param attempt zero based attempt number
+     */
+    private CompletableFuture<TimeStampToken> attempt(byte[] imprint, int attempt) {
+        if (!circuitBreaker.allow()) {
+            return CompletableFuture.failedFuture(
+                    new IOException("time stamp authority circuit is open"));
+        }
+
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(true);
+
+        if (!policy.isEmpty()) {
+            generator.setReqPolicy(new ASN1ObjectIdentifier(policy));
+        }
+
+        TimeStampRequest request =
+                generator.generate(
+                        TSPAlgorithms.SHA256, imprint, BigInteger.valueOf(random.nextLong()));
+        HttpRequest httpRequest;
+
+        try {
+            httpRequest =
+                    HttpRequest.newBuilder(URI.create(url))
+                            .timeout(Duration.ofMillis(timeoutMs))
+                            .header("Content-Type", "application/timestamp-query")
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(request.getEncoded()))
+                            .build();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> token(request, response))
+                .handle(
+                        (token, e) -> {
+                            if (e == null) {
+                                circuitBreaker.success();
+                                return CompletableFuture.completedFuture(token);
+                            }
+
+                            circuitBreaker.failure();
+
+                            if (attempt >= retries) {
+                                return CompletableFuture.<TimeStampToken>failedFuture(unwrap(e));
+                            }
+
+                            long delay = backoffMs << attempt;
+                            log.debug(
+                                    "Retrying time stamp in {} ms: {}",
+                                    delay,
+                                    unwrap(e).toString());
+                            return CompletableFuture.supplyAsync(
+                                            () -> null,
+                                            CompletableFuture.delayedExecutor(
+                                                    delay, TimeUnit.MILLISECONDS))
+                                    .thenCompose(v -> attempt(imprint, attempt + 1));
+                        })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Check the authority's response against the request it answers.
+     *
+     * @param request
+     * @param response
+     */
+    private static TimeStampToken token(
+            TimeStampRequest request, HttpResponse<byte[]> response) {
+        try {
+            if (response.statusCode() != 200) {
+                throw new IOException(
+                        "time stamp authority returned HTTP " + response.statusCode());
+            }
+
+            TimeStampResponse timeStampResponse = new TimeStampResponse(response.body());
+            timeStampResponse.validate(request);
+            TimeStampToken token = timeStampResponse.getTimeStampToken();
+
+            if (token == null) {
+                throw new IOException(
+                        "time stamp request rejected: " + timeStampResponse.getStatusString());
+            }
+
+            return token;
+        } catch (IOException | TSPException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Attach a time stamp token to a signer as the signature time stamp attribute.
+     *
+     * @param signer
+     * @param token
+     */
+    private static SignerInformation withTimeStamp(SignerInformation signer, TimeStampToken token) {
+        try {
+            AttributeTable unsigned = signer.getUnsignedAttributes();
+            Hashtable<ASN1ObjectIdentifier, Attribute> attributes =
+                    unsigned == null ? new Hashtable<>() : unsigned.toHashtable();
+            attributes.put(
+                    PKCSObjectIdentifiers.id_aa_signatureTimeStampToken,
+                    new Attribute(
+                            PKCSObjectIdentifiers.id_aa_signatureTimeStampToken,
+                            new DERSet(ASN1Primitive.fromByteArray(token.getEncoded()))));
+            return SignerInformation.replaceUnsignedAttributes(
+                    signer, new AttributeTable(attributes));
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
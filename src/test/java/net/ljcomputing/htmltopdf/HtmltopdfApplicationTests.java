@@ -23,11 +23,20 @@ package net.ljcomputing.htmltopdf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import net.ljcomputing.htmltopdf.model.ConversionRequest;
 import net.ljcomputing.htmltopdf.service.Html5ParsingService;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
 import net.ljcomputing.htmltopdf.service.PdfSigningService;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 import org.junit.jupiter.api.Disabled;
@@ -46,6 +55,7 @@ class HtmltopdfApplicationTests {
     @Autowired private Html5ParsingService html5ParsingService;
     @Autowired private PdfRendererBuilder pdfRendererBuilder;
     @Autowired private PdfSigningService pdfSigningService;
+    @Autowired private HtmlToPdfService htmlToPdfService;
 
     @Test
     @Order(1)
@@ -86,4 +96,65 @@ class HtmltopdfApplicationTests {
         Path testOutFile = outputDirectory.resolve("htmltopdftest.pdf");
         pdfSigningService.signPdf(testOutFile, signature);
     }
+
+    @Test
+    @Order(12)
+    void convertBatch() throws Exception {
+        String url = getClass().getResource("/static/sample-signing-pdf.html").toExternalForm();
+        List<ConversionRequest> requests =
+                Arrays.asList(
+                        new ConversionRequest(url, outputDirectory.resolve("batch-1.pdf")),
+                        new ConversionRequest(url, outputDirectory.resolve("batch-2.pdf")));
+
+        List<CompletableFuture<Path>> futures = htmlToPdfService.convertAll(requests);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (CompletableFuture<Path> future : futures) {
+            assertTrue(Files.size(future.get()) > 0);
+        }
+    }
+
+    @Test
+    @Order(13)
+    void signInMemory() throws Exception {
+        String url = getClass().getResource("/static/sample-signing-pdf.html").toExternalForm();
+        Document doc = html5ParsingService.html5ParseDocument(url, 6000);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        htmlToPdfService.render(doc, url, pdf);
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("James G Willmore");
+        signature.setReason("Test Signature");
+        signature.setSignDate(Calendar.getInstance());
+
+        byte[] signed = pdfSigningService.signPdf(pdf.toByteArray(), signature);
+        assertTrue(signed.length > pdf.size());
+    }
+
+    @Test
+    @Order(14)
+    void convertTemplate() throws Exception {
+        Map<String, Object> line = new HashMap<>();
+        line.put("description", "Opening balance");
+        line.put("amount", "100.00");
+        Map<String, Object> statement = new HashMap<>();
+        statement.put("number", "S-0001");
+        statement.put("customer", "LJ Computing");
+        statement.put("lines", Arrays.asList(line));
+        Map<String, Object> model = new HashMap<>();
+        model.put("statement", statement);
+
+        String baseUri = getClass().getResource("/templates/").toExternalForm();
+        Path pdf =
+                htmlToPdfService
+                        .convertTemplate(
+                                "sample-statement",
+                                model,
+                                baseUri,
+                                outputDirectory.resolve("template.pdf"))
+                        .get();
+        assertTrue(Files.size(pdf) > 0);
+    }
 }
@@ -0,0 +1,109 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.budget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+import org.junit.jupiter.api.Test;
+
+class RenderContextTests {
+    @Test
+    void countsInputAndPagesAcrossThreads() throws Exception {
+        RenderBudget budget = new RenderBudget();
+        budget.setMaxInputBytes(100);
+        budget.setMaxPages(10);
+        RenderContext context = new RenderContext(budget);
+
+        try (RenderContext.Scope scope = context.enter()) {
+            RenderContext.addInput(60);
+            RenderContext.addRenderedPages(6);
+        }
+
+        assertNull(RenderContext.current());
+
+        CompletableFuture<Void> chunk =
+                CompletableFuture.runAsync(
+                        () -> {
+                            try (RenderContext.Scope scope = context.enter()) {
+                                RenderContext.addRenderedPages(6);
+                            }
+                        });
+        ExecutionException e = assertThrows(ExecutionException.class, chunk::get);
+        BudgetExceededException exceeded = (BudgetExceededException) e.getCause();
+        assertEquals(BudgetExceededException.Limit.PAGES, exceeded.getLimit());
+        assertEquals(12, exceeded.getActual());
+
+        exceeded = assertThrows(BudgetExceededException.class, () -> context.addInputBytes(41));
+        assertEquals(BudgetExceededException.Limit.INPUT_BYTES, exceeded.getLimit());
+    }
+
+    @Test
+    void watchdogInterruptsOverdueRender() throws Exception {
+        RenderBudget budget = new RenderBudget();
+        budget.setMaxWallMs(50);
+        RenderWatchdog watchdog = new RenderWatchdog();
+        RenderContext context = watchdog.watch(budget);
+
+        try (RenderContext.Scope scope = context.enter()) {
+            assertThrows(InterruptedException.class, () -> Thread.sleep(10_000));
+            BudgetExceededException exceeded =
+                    assertThrows(BudgetExceededException.class, RenderContext::check);
+            assertEquals(BudgetExceededException.Limit.WALL_TIME, exceeded.getLimit());
+        } finally {
+            watchdog.release(context);
+            watchdog.shutdown();
+        }
+
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void cancelStopsWorkingThread() throws Exception {
+        RenderContext context = new RenderContext(RenderBudget.unlimited());
+        CountDownLatch entered = new CountDownLatch(1);
+        CompletableFuture<Void> render =
+                CompletableFuture.runAsync(
+                        () -> {
+                            try (RenderContext.Scope scope = context.enter()) {
+                                entered.countDown();
+
+                                while (true) {
+                                    RenderContext.check();
+                                    Thread.onSpinWait();
+                                }
+                            }
+                        });
+
+        entered.await(5, TimeUnit.SECONDS);
+        context.cancel();
+
+        ExecutionException e = assertThrows(ExecutionException.class, render::get);
+        assertEquals(RenderCancelledException.class, e.getCause().getClass());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.pdfbox.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CachingStreamFactoryTests {
+    @TempDir Path temp;
+
+    private HttpServer server;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicReference<String> body = new AtomicReference<>("a { color: red; }");
+    private final AtomicReference<String> contentType = new AtomicReference<>("text/css");
+    private String baseUri;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(
+                "/",
+                exchange -> {
+                    String etag = "\"" + Integer.toHexString(body.get().hashCode()) + "\"";
+                    exchange.getResponseHeaders().set("ETag", etag);
+
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+
+                    fullResponses.incrementAndGet();
+                    byte[] bytes = body.get().getBytes(StandardCharsets.ISO_8859_1);
+                    exchange.getResponseHeaders().set("Content-Type", contentType.get());
+                    exchange.sendResponseHeaders(200, bytes.length);
+
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                });
+        server.start();
+        baseUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static String read(CachingStreamFactory factory, String url) throws IOException {
+        try (InputStream is = factory.getUrl(url).getStream()) {
+            return new String(IOUtils.toByteArray(is), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static String readText(CachingStreamFactory factory, String url) throws IOException {
+        try (Reader reader = new BufferedReader(factory.getUrl(url).getReader())) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[256];
+
+            for (int n = reader.read(buffer); n > 0; n = reader.read(buffer)) {
+                sb.append(buffer, 0, n);
+            }
+
+            return sb.toString();
+        }
+    }
+
+    @Test
+    void servesFreshResourcesFromCache() throws IOException {
+        CachingStreamFactory factory =
+                new CachingStreamFactory(new ResourceCache(1 << 20, 60000), 5000);
+
+        assertEquals(body.get(), read(factory, baseUri + "style.css"));
+        body.set("b { color: blue; }");
+        assertEquals("a { color: red; }", read(factory, baseUri + "style.css"));
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    void revalidatesStaleResources() throws IOException {
+        CachingStreamFactory factory =
+                new CachingStreamFactory(new ResourceCache(1 << 20, 0), 5000);
+
+        assertEquals(body.get(), read(factory, baseUri + "style.css"));
+        assertEquals(body.get(), read(factory, baseUri + "style.css"));
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModified.get());
+
+        body.set("b { color: blue; }");
+        assertEquals("b { color: blue; }", read(factory, baseUri + "style.css"));
+        assertEquals(2, fullResponses.get());
+    }
+
+    @Test
+    void rereadsChangedFiles() throws IOException {
+        CachingStreamFactory factory =
+                new CachingStreamFactory(new ResourceCache(1 << 20, 60000), 5000);
+        Path file = temp.resolve("style.css");
+        Files.write(file, "one".getBytes(StandardCharsets.UTF_8));
+        String url = file.toUri().toString();
+
+        assertEquals("one", read(factory, url));
+
+        Files.write(file, "three".getBytes(StandardCharsets.UTF_8));
+        assertEquals("three", read(factory, url));
+
+        Files.write(file, "four!".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertEquals("four!", read(factory, url));
+    }
+
+    @Test
+    void decodesWithTheDeclaredCharset() throws IOException {
+        CachingStreamFactory factory =
+                new CachingStreamFactory(new ResourceCache(1 << 20, 60000), 5000);
+        body.set("p:before { content: \"caf\u00e9\"; }");
+        contentType.set("text/css; charset=ISO-8859-1");
+
+        assertEquals(body.get(), readText(factory, baseUri + "latin1.css"));
+    }
+
+    @Test
+    void decodesWithTheByteOrderMark() throws IOException {
+        CachingStreamFactory factory =
+                new CachingStreamFactory(new ResourceCache(1 << 20, 60000), 5000);
+        Path utf16 = temp.resolve("utf16.css");
+        Path utf8 = temp.resolve("utf8.css");
+        String css = "p:before { content: \"\u2014\"; }";
+        byte[] text = css.getBytes(StandardCharsets.UTF_16LE);
+        byte[] withBom = new byte[text.length + 2];
+        withBom[0] = (byte) 0xFF;
+        withBom[1] = (byte) 0xFE;
+        System.arraycopy(text, 0, withBom, 2, text.length);
+        Files.write(utf16, withBom);
+        Files.write(utf8, ("\uFEFF" + css).getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(css, readText(factory, utf16.toUri().toString()));
+        assertEquals(css, readText(factory, utf8.toUri().toString()));
+    }
+}
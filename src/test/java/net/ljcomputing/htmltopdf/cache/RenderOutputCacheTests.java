@@ -0,0 +1,106 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenderOutputCacheTests {
+    @TempDir Path temp;
+
+    @Test
+    void collapsesConcurrentRenders() throws Exception {
+        RenderOutputCache cache = new RenderOutputCache(temp.resolve("cache"), 1024);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<Boolean> first =
+                    executor.submit(
+                            () ->
+                                    cache.render(
+                                            "k",
+                                            os -> {
+                                                renders.incrementAndGet();
+                                                started.countDown();
+                                                await(release);
+                                                os.write(new byte[] {1, 2, 3});
+                                            },
+                                            temp.resolve("a.pdf")));
+            started.await(5, TimeUnit.SECONDS);
+            Future<Boolean> second =
+                    executor.submit(
+                            () ->
+                                    cache.render(
+                                            "k",
+                                            os -> renders.incrementAndGet(),
+                                            temp.resolve("b.pdf")));
+            release.countDown();
+
+            assertFalse(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, renders.get());
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(temp.resolve("b.pdf")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        Path directory = temp.resolve("cache");
+        RenderOutputCache cache = new RenderOutputCache(directory, 8);
+        cache.render("a", os -> os.write(new byte[4]), temp.resolve("a.pdf"));
+        cache.render("b", os -> os.write(new byte[4]), temp.resolve("b.pdf"));
+        cache.render("a", os -> os.write(new byte[4]), temp.resolve("a.pdf"));
+        cache.render("c", os -> os.write(new byte[4]), temp.resolve("c.pdf"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(Files.exists(directory.resolve("b.pdf")));
+        assertEquals(2, new RenderOutputCache(directory, 8).size());
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedIOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.font;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.openhtmltopdf.outputdevice.helper.BaseRendererBuilder.FontStyle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+class FontRegistryTests {
+    /** A TrueType font that ships with PDFBox. */
+    private static final String LIBERATION_SANS =
+            "org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    @TempDir Path temp;
+
+    @Test
+    void derivesWeightFromSubfamily() {
+        assertEquals(100, FontRegistry.weight("Thin"));
+        assertEquals(200, FontRegistry.weight("ExtraLight"));
+        assertEquals(300, FontRegistry.weight("Light Italic"));
+        assertEquals(400, FontRegistry.weight("Regular"));
+        assertEquals(400, FontRegistry.weight(null));
+        assertEquals(500, FontRegistry.weight("Medium"));
+        assertEquals(600, FontRegistry.weight("Semi Bold"));
+        assertEquals(700, FontRegistry.weight("Bold"));
+        assertEquals(800, FontRegistry.weight("Extra-Bold Italic"));
+        assertEquals(900, FontRegistry.weight("Black"));
+    }
+
+    @Test
+    void derivesStyleFromSubfamily() {
+        assertTrue(FontRegistry.italic("Bold Italic"));
+        assertTrue(FontRegistry.italic("Oblique"));
+        assertFalse(FontRegistry.italic("Regular"));
+        assertFalse(FontRegistry.italic(null));
+    }
+
+    @Test
+    void registersTrueTypeFonts() {
+        FontRegistry registry =
+                new FontRegistry(
+                        Collections.singletonList(new ClassPathResource(LIBERATION_SANS)));
+
+        assertEquals(1, registry.getFonts().size());
+        RegisteredFont font = registry.getFonts().get(0);
+        assertEquals("Liberation Sans", font.getFamily());
+        assertEquals(400, font.getWeight());
+        assertEquals(FontStyle.NORMAL, font.getStyle());
+        assertNotEquals(
+                new FontRegistry(Collections.emptyList()).getFingerprint(),
+                registry.getFingerprint());
+    }
+
+    @Test
+    void skipsCffAndUnreadableFonts() throws Exception {
+        byte[] cff = new byte[64];
+        System.arraycopy("OTTO".getBytes(StandardCharsets.US_ASCII), 0, cff, 0, 4);
+        Path otf = Files.write(temp.resolve("Cff-Regular.otf"), cff);
+        Path broken = Files.write(temp.resolve("Broken.ttf"), new byte[] {1, 2, 3});
+
+        assertTrue(FontRegistry.isCff(cff));
+        assertFalse(FontRegistry.isCff(new byte[] {0, 1, 0, 0}));
+
+        Resource[] resources = {
+            new FileSystemResource(otf),
+            new FileSystemResource(broken),
+            new ClassPathResource(LIBERATION_SANS)
+        };
+        FontRegistry registry = new FontRegistry(Arrays.asList(resources));
+
+        assertEquals(1, registry.getFonts().size());
+        assertEquals("Liberation Sans", registry.getFonts().get(0).getFamily());
+    }
+}
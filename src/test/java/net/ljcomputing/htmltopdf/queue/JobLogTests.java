@@ -0,0 +1,104 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import net.ljcomputing.htmltopdf.model.Job;
+import net.ljcomputing.htmltopdf.model.JobStage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobLogTests {
+    @TempDir Path temp;
+
+    @Test
+    void resumesAfterTornWrite() throws Exception {
+        Path file = temp.resolve("jobs.log");
+
+        try (JobLog log = new JobLog(file, true)) {
+            log.append(Arrays.asList(JobRecord.submit(job("a")), JobRecord.submit(job("b"))));
+            log.append(JobRecord.claim(JobStage.RENDER, Arrays.asList("a", "b")));
+            log.append(JobRecord.checkpoint("a", JobStage.SIGN));
+        }
+
+        // a crash in the middle of the next append
+        byte[] torn = "{\"type\":\"CHECK".getBytes(StandardCharsets.UTF_8);
+        Files.write(file, torn, StandardOpenOption.APPEND);
+
+        try (JobLog log = new JobLog(file, true)) {
+            assertEquals(JobStage.SIGN, log.get("a").getStage());
+            assertEquals(0, log.get("a").getAttempts());
+            assertEquals(JobStage.RENDER, log.get("b").getStage());
+            assertEquals(1, log.get("b").getAttempts());
+
+            log.append(JobRecord.checkpoint("b", JobStage.DONE));
+        }
+
+        try (JobLog log = new JobLog(file, true)) {
+            assertEquals(JobStage.DONE, log.get("b").getStage());
+            assertEquals(1, log.live().size());
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveJobs() throws Exception {
+        Path file = temp.resolve("jobs.log");
+
+        try (JobLog log = new JobLog(file, false)) {
+            log.append(Arrays.asList(JobRecord.submit(job("a")), JobRecord.submit(job("b"))));
+            log.append(JobRecord.checkpoint("a", JobStage.DONE));
+            log.append(JobRecord.fail("b", "broken"));
+            log.append(JobRecord.submit(job("c")));
+            log.append(JobRecord.checkpoint("c", JobStage.SIGN));
+
+            log.compact();
+            assertEquals(1, log.getRecords());
+            log.append(JobRecord.claim(JobStage.SIGN, Arrays.asList("c")));
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+
+        try (JobLog log = new JobLog(file, false)) {
+            assertNull(log.get("a"));
+            assertNull(log.get("b"));
+            assertEquals(JobStage.SIGN, log.get("c").getStage());
+            assertEquals(1, log.get("c").getAttempts());
+        }
+    }
+
+    private static Job job(String id) {
+        Job job = new Job();
+        job.setId(id);
+        job.setSourceUrl("file:/tmp/" + id + ".html");
+        job.setOutput("/tmp/" + id + ".pdf");
+        job.setSign(true);
+        return job;
+    }
+}
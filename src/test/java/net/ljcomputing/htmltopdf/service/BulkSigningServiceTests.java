@@ -0,0 +1,144 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.ljcomputing.htmltopdf.model.BulkSigningReport;
+import net.ljcomputing.htmltopdf.model.BulkSigningResult;
+import net.ljcomputing.htmltopdf.service.impl.PdfSigningServiceImpl;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class BulkSigningServiceTests {
+    @Autowired private BulkSigningService bulkSigningService;
+
+    @TempDir Path temp;
+
+    @Test
+    void signedPathKeepsSourceIntact() {
+        assertEquals(temp.resolve("a-signed.pdf"), signedPath("a.pdf"));
+        assertEquals(temp.resolve("X-signed.pdf"), signedPath("X.PDF"));
+        assertEquals(temp.resolve("contract-signed.pdf"), signedPath("contract"));
+        assertEquals(temp.resolve("a.pdf-signed.pdf"), signedPath("a.pdf.pdf"));
+    }
+
+    @Test
+    void reportsEachDocumentInOrder() throws Exception {
+        byte[] pdf = pdf();
+        Path lower = Files.write(temp.resolve("a.pdf"), pdf);
+        byte[] garbage = "not a pdf".getBytes(StandardCharsets.UTF_8);
+        Path broken = Files.write(temp.resolve("b.pdf"), garbage);
+        Path upper = Files.write(temp.resolve("C.PDF"), pdf);
+        Path bare = Files.write(temp.resolve("contract"), pdf);
+        List<Path> sources = Arrays.asList(lower, broken, upper, bare);
+
+        BulkSigningReport report =
+                bulkSigningService.signAll(sources, BulkSigningServiceTests::signature);
+
+        assertEquals(3, report.getSucceeded());
+        assertEquals(1, report.getFailed());
+
+        for (int i = 0; i < sources.size(); i++) {
+            BulkSigningResult result = report.getResults().get(i);
+            assertEquals(sources.get(i), result.getSource());
+            assertEquals(sources.get(i) != broken, result.isSuccess());
+        }
+
+        assertFalse(Files.exists(temp.resolve("b-signed.pdf")));
+        assertTrue(temporaryFiles().isEmpty(), temporaryFiles().toString());
+        assertTrue(Files.size(temp.resolve("C-signed.pdf")) > pdf.length);
+        assertTrue(Files.size(temp.resolve("contract-signed.pdf")) > pdf.length);
+
+        // sources are never overwritten
+        assertArrayEquals(pdf, Files.readAllBytes(upper));
+        assertArrayEquals(pdf, Files.readAllBytes(bare));
+    }
+
+    @Test
+    void signDirectorySkipsSignedCopies() throws Exception {
+        Files.write(temp.resolve("one.pdf"), pdf());
+        Files.write(temp.resolve("TWO.PDF"), pdf());
+        Files.write(temp.resolve("notes.txt"), pdf());
+
+        BulkSigningReport first =
+                bulkSigningService.signDirectory(temp, BulkSigningServiceTests::signature);
+        BulkSigningReport second =
+                bulkSigningService.signDirectory(
+                        temp,
+                        BulkSigningServiceTests::signature,
+                        KeyStoreService.DEFAULT_KEYSTORE);
+
+        assertEquals(2, first.getSucceeded());
+        assertEquals(Path.of("TWO.PDF"), first.getResults().get(0).getSource().getFileName());
+        assertEquals(2, second.getSucceeded());
+        assertFalse(Files.exists(temp.resolve("one-signed-signed.pdf")));
+        assertTrue(temporaryFiles().isEmpty(), temporaryFiles().toString());
+    }
+
+    private List<Path> temporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(temp)) {
+            return files.filter(file -> file.toString().endsWith(".tmp"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path signedPath(String name) {
+        return PdfSigningServiceImpl.signedPath(temp.resolve(name));
+    }
+
+    private static byte[] pdf() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            document.save(os);
+            return os.toByteArray();
+        }
+    }
+
+    private static PDSignature signature() {
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("Bulk Test");
+        signature.setSignDate(Calendar.getInstance());
+        return signature;
+    }
+}
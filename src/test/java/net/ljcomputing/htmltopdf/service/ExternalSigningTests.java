@@ -0,0 +1,78 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.w3c.dom.Document;
+
+@SpringBootTest(properties = "app.signing.external=true")
+class ExternalSigningTests {
+    @Autowired private Html5ParsingService html5ParsingService;
+    @Autowired private HtmlToPdfService htmlToPdfService;
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Test
+    void signsDigestOnly() throws Exception {
+        String url = getClass().getResource("/static/sample-signing-pdf.html").toExternalForm();
+        Document doc = html5ParsingService.html5ParseDocument(url, 6000);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        htmlToPdfService.render(doc, url, pdf);
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("James G Willmore");
+        signature.setReason("Test Signature");
+        signature.setSignDate(Calendar.getInstance());
+
+        byte[] signed = pdfSigningService.signPdf(pdf.toByteArray(), signature);
+
+        try (PDDocument document = PDDocument.load(signed)) {
+            assertEquals(1, document.getSignatureDictionaries().size());
+            PDSignature embedded = document.getSignatureDictionaries().get(0);
+            CMSSignedData cms =
+                    new CMSSignedData(
+                            new CMSProcessableByteArray(embedded.getSignedContent(signed)),
+                            embedded.getContents(signed));
+            SignerInformation signer = cms.getSignerInfos().getSigners().iterator().next();
+            X509CertificateHolder certificate =
+                    (X509CertificateHolder)
+                            cms.getCertificates().getMatches(signer.getSID()).iterator().next();
+
+            assertTrue(
+                    signer.verify(new JcaSimpleSignerInfoVerifierBuilder().build(certificate)));
+        }
+    }
+}
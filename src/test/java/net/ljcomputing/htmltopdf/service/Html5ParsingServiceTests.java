@@ -0,0 +1,107 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.w3c.dom.Document;
+
+@SpringBootTest
+class Html5ParsingServiceTests {
+    private static final FileTime MODIFIED = FileTime.fromMillis(1_600_000_000_000L);
+
+    @Autowired private Html5ParsingService html5ParsingService;
+
+    @TempDir Path directory;
+
+    private Path file;
+    private String baseUri;
+
+    @BeforeEach
+    void writeFile() throws IOException {
+        file = directory.resolve("page.html");
+        baseUri = file.toUri().toString();
+        write("one");
+    }
+
+    /** Rewrite the file, keeping its modification time. */
+    private void write(String text) throws IOException {
+        Files.write(file, html(text).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, MODIFIED);
+    }
+
+    private static String html(String text) {
+        return "<html><body><p>" + text + "</p></body></html>";
+    }
+
+    private static String text(Document document) {
+        return document.getElementsByTagName("p").item(0).getTextContent();
+    }
+
+    @Test
+    void unchangedFileIsServedFromTheCache() throws IOException {
+        assertEquals("one", text(html5ParsingService.html5ParseDocument(file, baseUri)));
+        assertEquals("one", text(html5ParsingService.html5ParseDocument(baseUri, 1000)));
+
+        // same length and modification time, so the cached parses are still considered current
+        write("two");
+
+        assertEquals("one", text(html5ParsingService.html5ParseDocument(file, baseUri)));
+        assertEquals("one", text(html5ParsingService.html5ParseDocument(baseUri, 1000)));
+    }
+
+    @Test
+    void changedFileIsParsedAgain() throws IOException {
+        assertEquals("one", text(html5ParsingService.html5ParseDocument(file, baseUri)));
+
+        write("two");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(MODIFIED.toMillis() + 1000));
+
+        assertEquals("two", text(html5ParsingService.html5ParseDocument(file, baseUri)));
+
+        // a different length is a change even with the original modification time
+        write("three");
+
+        assertEquals("three", text(html5ParsingService.html5ParseDocument(file, baseUri)));
+    }
+
+    @Test
+    void callersReceiveTheirOwnCopy() throws IOException {
+        Document first = html5ParsingService.html5ParseDocument(file, baseUri);
+        first.getElementsByTagName("p").item(0).setTextContent("changed");
+        Document second = html5ParsingService.html5ParseDocument(file, baseUri);
+
+        assertNotSame(first, second);
+        assertEquals("one", text(second));
+        assertEquals("changed", text(first));
+    }
+}
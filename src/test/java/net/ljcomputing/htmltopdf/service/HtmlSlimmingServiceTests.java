@@ -0,0 +1,75 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.ljcomputing.htmltopdf.model.SlimmingReport;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class HtmlSlimmingServiceTests {
+    @Autowired private HtmlSlimmingService htmlSlimmingService;
+
+    @Test
+    void removesWhatLayoutCannotUse() {
+        Document doc =
+                Jsoup.parse(
+                        "<html><head><script>track()</script><style>"
+                                + "/* framework */ .used { color: red } .unused { color: blue }"
+                                + " a:hover, .nav > li { margin: 0 }"
+                                + " @media print { .gone { display: block } p::before { content: '' } }"
+                                + " @page { size: A4 }"
+                                + "</style></head><body onload=\"init()\">"
+                                + "<!-- comment --><p class=\"used\">text</p>"
+                                + "<div hidden><span>a</span><span>b</span></div>"
+                                + "<div style=\"display: none\">c</div><a href=\"#\">link</a>"
+                                + "</body></html>");
+
+        SlimmingReport report = htmlSlimmingService.slim(doc);
+        String css = doc.selectFirst("style").data();
+
+        assertEquals(1, report.getScripts());
+        assertEquals(2, report.getHiddenElements());
+        assertEquals(1, report.getComments());
+        assertEquals(1, report.getEventHandlers());
+        assertEquals(2, report.getCssRules());
+        assertEquals(6, report.getNodes());
+        assertTrue(report.getBytes() > 0);
+        assertTrue(css.contains(".used"));
+        assertTrue(css.contains("a:hover"));
+        assertTrue(css.contains("p::before"));
+        assertTrue(css.contains("@page"));
+        assertFalse(css.contains(".unused"));
+        assertFalse(css.contains(".gone"));
+        assertNull(doc.selectFirst("script"));
+        assertNotNull(doc.selectFirst("p.used"));
+        assertFalse(doc.body().hasAttr("onload"));
+    }
+}
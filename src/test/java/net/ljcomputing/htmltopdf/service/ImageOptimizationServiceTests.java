@@ -0,0 +1,109 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import javax.imageio.ImageIO;
+import net.ljcomputing.htmltopdf.model.ImageReport;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+@SpringBootTest
+class ImageOptimizationServiceTests {
+    @Autowired private ImageOptimizationService imageOptimizationService;
+    @Autowired private W3CDom w3cDom;
+
+    @Test
+    void downsamplesToDisplayedSize() throws Exception {
+        String photo = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(photo());
+        Document doc =
+                w3cDom.fromJsoup(
+                        Jsoup.parse(
+                                "<html><body><img width=\"200\" src=\"" + photo + "\">"
+                                        + "<img style=\"width: 200px\" src=\"" + photo + "\">"
+                                        + "</body></html>"));
+
+        ImageReport report = imageOptimizationService.optimize(doc, null);
+        Element image = (Element) doc.getElementsByTagName("img").item(0);
+        String src = image.getAttribute("src");
+        BufferedImage resized =
+                ImageIO.read(
+                        new ByteArrayInputStream(
+                                Base64.getDecoder().decode(src.substring(src.indexOf(',') + 1))));
+
+        assertEquals(2, report.getResized());
+        assertEquals(1, report.getCached());
+        assertTrue(report.getBytesAfter() < report.getBytesBefore());
+        // 200 CSS pixels at 150 dpi
+        assertEquals(313, resized.getWidth());
+        assertEquals(157, resized.getHeight());
+    }
+
+    @Test
+    void keepsTheDisplayedSizeOfUnsizedImages() throws Exception {
+        String photo = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(photo());
+        Document doc =
+                w3cDom.fromJsoup(
+                        Jsoup.parse(
+                                "<html><body><img src=\"" + photo + "\">"
+                                        + "<img style=\"width: 50%\" src=\"" + photo + "\">"
+                                        + "</body></html>"));
+
+        ImageReport report = imageOptimizationService.optimize(doc, null);
+        Element unsized = (Element) doc.getElementsByTagName("img").item(0);
+        Element relative = (Element) doc.getElementsByTagName("img").item(1);
+
+        assertEquals(1, report.getResized());
+        assertNotEquals(photo, unsized.getAttribute("src"));
+        assertEquals("2000", unsized.getAttribute("width"));
+        assertEquals("1000", unsized.getAttribute("height"));
+        assertEquals(photo, relative.getAttribute("src"));
+        assertFalse(relative.hasAttribute("width"));
+        assertFalse(relative.hasAttribute("height"));
+    }
+
+    private static byte[] photo() throws Exception {
+        BufferedImage image = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, 2000, 1000, Color.ORANGE));
+        g.fillRect(0, 0, 2000, 1000);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import net.ljcomputing.htmltopdf.model.SignatureCredentials;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest
+class KeyStoreServiceTests {
+    private static final Path TENANT_KEYSTORE;
+
+    static {
+        try {
+            TENANT_KEYSTORE = Files.createTempDirectory("keystores").resolve("tenant.p12");
+            copyKeystore(TENANT_KEYSTORE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired private KeyStoreService keyStoreService;
+
+    @DynamicPropertySource
+    static void keystores(DynamicPropertyRegistry registry) {
+        registry.add("app.signing.keystores[0].name", () -> "tenant");
+        registry.add(
+                "app.signing.keystores[0].location", () -> TENANT_KEYSTORE.toUri().toString());
+        registry.add("app.signing.keystores[0].password", () -> "${app.password}");
+        registry.add("app.signing.keystores[0].alias", () -> "${app.keystoreAlias}");
+    }
+
+    @Test
+    void selectsKeystoreByName() {
+        assertEquals(2, keyStoreService.keystores().size());
+        assertTrue(keyStoreService.retrieveCredentials("tenant").isValid());
+        assertSame(
+                keyStoreService.retrieveCredentials("tenant"),
+                keyStoreService.retrieveCredentials("tenant"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> keyStoreService.retrieveCredentials("unknown"));
+    }
+
+    @Test
+    void reloadsChangedKeystore() throws Exception {
+        SignatureCredentials before = keyStoreService.retrieveCredentials("tenant");
+        Path replacement = TENANT_KEYSTORE.resolveSibling("replacement.tmp");
+        copyKeystore(replacement);
+        Files.move(replacement, TENANT_KEYSTORE, StandardCopyOption.REPLACE_EXISTING);
+
+        long deadline = System.currentTimeMillis() + 30_000;
+
+        while (keyStoreService.retrieveCredentials("tenant") == before
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertNotSame(before, keyStoreService.retrieveCredentials("tenant"));
+    }
+
+    private static void copyKeystore(Path target) throws IOException {
+        try (InputStream is =
+                KeyStoreServiceTests.class.getResourceAsStream("/keystores/keystore.p12")) {
+            Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import net.ljcomputing.htmltopdf.model.OptimizationReport;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class PdfOptimizationServiceTests {
+    @Autowired private PdfOptimizationService pdfOptimizationService;
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Test
+    void mergesDuplicatesAndDropsUnusedResources() throws Exception {
+        byte[] pdf;
+
+        try (PDDocument document = new PDDocument()) {
+            BufferedImage logo = image(Color.RED);
+
+            for (int i = 0; i < 2; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                // the same picture, embedded once per page
+                PDImageXObject image = LosslessFactory.createFromImage(document, logo);
+
+                try (PDPageContentStream cs =
+                        new PDPageContentStream(document, page, AppendMode.APPEND, false)) {
+                    for (int y = 0; y < 5; y++) {
+                        cs.drawImage(image, 50, 50 + y * 120, 100, 100);
+                    }
+                }
+            }
+
+            // never drawn
+            document.getPage(0)
+                    .getResources()
+                    .add(LosslessFactory.createFromImage(document, image(Color.BLUE)));
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            document.save(os);
+            pdf = os.toByteArray();
+        }
+
+        ByteArrayOutputStream optimized = new ByteArrayOutputStream();
+        OptimizationReport report = pdfOptimizationService.optimize(pdf, optimized);
+
+        assertEquals(1, report.getDuplicateStreams());
+        assertEquals(1, report.getUnusedResources());
+        assertEquals(2, report.getCompressedStreams());
+        assertTrue(report.getBytesAfter() < report.getBytesBefore());
+
+        try (PDDocument document = PDDocument.load(optimized.toByteArray())) {
+            assertEquals(2, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    void passesSignedDocumentsThrough() throws Exception {
+        byte[] pdf;
+
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            document.save(os);
+            pdf = os.toByteArray();
+        }
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("Optimizer Test");
+        signature.setSignDate(Calendar.getInstance());
+        byte[] signed = pdfSigningService.signPdf(pdf, signature);
+
+        ByteArrayOutputStream optimized = new ByteArrayOutputStream();
+        OptimizationReport report = pdfOptimizationService.optimize(signed, optimized);
+
+        assertArrayEquals(signed, optimized.toByteArray());
+        assertEquals(0, report.getBytesSaved());
+        assertEquals(signed.length, report.getBytesAfter());
+    }
+
+    private static BufferedImage image(Color color) {
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillOval(0, 0, 200, 200);
+        g.dispose();
+        return image;
+    }
+}
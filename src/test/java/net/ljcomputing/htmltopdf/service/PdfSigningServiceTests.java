@@ -0,0 +1,105 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class PdfSigningServiceTests {
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @Test
+    void countersigningKeepsEarlierSignatureFields() throws Exception {
+        byte[] signed = pdfSigningService.signPdf(pdf(), signature("First Signer"));
+        byte[] countersigned = pdfSigningService.signPdf(signed, signature("Second Signer"));
+
+        try (PDDocument document = PDDocument.load(countersigned)) {
+            List<PDSignatureField> fields = new ArrayList<>();
+
+            for (PDField field : document.getDocumentCatalog().getAcroForm().getFieldTree()) {
+                if (field instanceof PDSignatureField) {
+                    fields.add((PDSignatureField) field);
+                }
+            }
+
+            assertEquals(2, fields.size());
+            assertEquals("First Signer", fields.get(0).getSignature().getName());
+            assertEquals("Second Signer", fields.get(1).getSignature().getName());
+            assertNotEquals(
+                    fields.get(0).getFullyQualifiedName(), fields.get(1).getFullyQualifiedName());
+            assertEquals(2, document.getSignatureDictionaries().size());
+
+            for (PDSignature signature : document.getSignatureDictionaries()) {
+                assertTrue(verifies(signature, countersigned), signature.getName());
+            }
+        }
+    }
+
+    private static boolean verifies(PDSignature signature, byte[] pdf) throws Exception {
+        CMSSignedData cms =
+                new CMSSignedData(
+                        new CMSProcessableByteArray(signature.getSignedContent(pdf)),
+                        signature.getContents(pdf));
+        SignerInformation signer = cms.getSignerInfos().getSigners().iterator().next();
+        X509CertificateHolder certificate =
+                (X509CertificateHolder)
+                        cms.getCertificates().getMatches(signer.getSID()).iterator().next();
+        return signer.verify(new JcaSimpleSignerInfoVerifierBuilder().build(certificate));
+    }
+
+    private static byte[] pdf() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            document.save(os);
+            return os.toByteArray();
+        }
+    }
+
+    private static PDSignature signature(String name) {
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName(name);
+        signature.setSignDate(Calendar.getInstance());
+        return signature;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.ljcomputing.htmltopdf.cache.ResourceCache;
+import net.ljcomputing.htmltopdf.model.PrefetchReport;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.w3c.dom.Document;
+
+@SpringBootTest
+class SubresourcePrefetchServiceTests {
+    private static final int IMAGES = 40;
+
+    private static final Map<String, String> STYLESHEETS = new HashMap<>();
+
+    static {
+        STYLESHEETS.put(
+                "/css/nested.css",
+                "@import 'imported.css'; body { background: url(../img/texture.png); }");
+        STYLESHEETS.put(
+                "/css/imported.css",
+                "p { background: url(\"/img/imported.png\"); }"
+                        + " div { background: url('../img/texture.png'); }"
+                        + " span { background: url(http:///no-host.png); }");
+    }
+
+    @Autowired private SubresourcePrefetchService subresourcePrefetchService;
+    @Autowired private ResourceCache resourceCache;
+    @Autowired private W3CDom w3cDom;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private String baseUri;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(
+                "/",
+                exchange -> {
+                    requests.incrementAndGet();
+                    String path = exchange.getRequestURI().getPath();
+                    byte[] body =
+                            STYLESHEETS.getOrDefault(path, path).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(
+                            exchange.getRequestURI().getPath().contains("missing") ? 404 : 200,
+                            body.length);
+
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                });
+        server.start();
+        baseUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/page/index.html";
+        resourceCache.clear();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void prefetchesIntoResourceCache() {
+        StringBuilder html = new StringBuilder("<html><head>");
+        html.append("<link rel=\"stylesheet\" href=\"style.css\">");
+        html.append("<style>body { background: url('/img/background.png'); }</style>");
+        html.append("</head><body>");
+
+        for (int i = 0; i < IMAGES; i++) {
+            html.append("<img src=\"../img/photo-").append(i).append(".jpg\">");
+        }
+
+        html.append("<img src=\"missing.png\"><img src=\"data:image/png;base64,AAAA\">");
+        html.append("</body></html>");
+        Document document = w3cDom.fromJsoup(Jsoup.parse(html.toString(), baseUri));
+
+        PrefetchReport report = subresourcePrefetchService.prefetch(document, baseUri);
+
+        assertEquals(IMAGES + 3, report.getRequested());
+        assertEquals(IMAGES + 2, report.getFetched());
+        assertEquals(1, report.getFailed());
+        assertNotNull(resourceCache.get(baseUri.replace("page/index.html", "img/photo-7.jpg")));
+        assertNotNull(resourceCache.get(baseUri.replace("index.html", "style.css")));
+
+        int served = requests.get();
+        PrefetchReport again = subresourcePrefetchService.prefetch(document, baseUri);
+
+        assertEquals(IMAGES + 2, again.getAlreadyCached());
+        assertEquals(served + 1, requests.get());
+    }
+
+    @Test
+    void followsStylesheetAndStyleAttributeReferences() {
+        String html =
+                "<html><head><link rel=\"stylesheet\" href=\"/css/nested.css\"></head>"
+                        + "<body><div style=\"background: url(/img/inline.png)\"></div>"
+                        + "<img src=\"http:///no-host.png\">"
+                        + "</body></html>";
+        Document document = w3cDom.fromJsoup(Jsoup.parse(html, baseUri));
+        String root = baseUri.replace("/page/index.html", "");
+
+        PrefetchReport report = subresourcePrefetchService.prefetch(document, baseUri);
+
+        assertEquals(5, report.getRequested());
+        assertEquals(5, report.getFetched());
+        assertNotNull(resourceCache.get(root + "/css/imported.css"));
+        assertNotNull(resourceCache.get(root + "/img/texture.png"));
+        assertNotNull(resourceCache.get(root + "/img/imported.png"));
+        assertNotNull(resourceCache.get(root + "/img/inline.png"));
+
+        int served = requests.get();
+        PrefetchReport again = subresourcePrefetchService.prefetch(document, baseUri);
+
+        assertEquals(5, again.getAlreadyCached());
+        assertEquals(served, requests.get());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.w3c.dom.Document;
+
+/** Runs the time stamp client against a local authority built on BouncyCastle's TSP classes. */
+@SpringBootTest
+class TimeStampServiceTests {
+    private static final AtomicInteger REQUESTS = new AtomicInteger();
+    private static volatile CountDownLatch gate = new CountDownLatch(0);
+    private static final HttpServer SERVER;
+    private static final TimeStampResponseGenerator AUTHORITY;
+
+    static {
+        try {
+            AUTHORITY = authority();
+            SERVER = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            SERVER.createContext("/tsa", TimeStampServiceTests::handle);
+            SERVER.setExecutor(Executors.newCachedThreadPool());
+            SERVER.start();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Autowired private TimeStampService timeStampService;
+    @Autowired private Html5ParsingService html5ParsingService;
+    @Autowired private HtmlToPdfService htmlToPdfService;
+    @Autowired private PdfSigningService pdfSigningService;
+
+    @DynamicPropertySource
+    static void tsa(DynamicPropertyRegistry registry) {
+        registry.add(
+                "app.tsa.url",
+                () -> "http://127.0.0.1:" + SERVER.getAddress().getPort() + "/tsa");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        SERVER.stop(0);
+    }
+
+    @Test
+    void requestsConcurrently() throws Exception {
+        int before = REQUESTS.get();
+        gate = new CountDownLatch(1);
+
+        CompletableFuture<TimeStampToken> first =
+                timeStampService.timestamp("first signature".getBytes());
+        CompletableFuture<TimeStampToken> second =
+                timeStampService.timestamp("second signature".getBytes());
+        assertFalse(first.isDone() || second.isDone());
+        gate.countDown();
+
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+        assertNotNull(second.get(10, TimeUnit.SECONDS));
+        assertFalse(
+                Arrays.equals(
+                        first.get().getTimeStampInfo().getMessageImprintDigest(),
+                        second.get().getTimeStampInfo().getMessageImprintDigest()));
+        assertEquals(2, REQUESTS.get() - before);
+    }
+
+    @Test
+    void timestampsSignature() throws Exception {
+        String url = getClass().getResource("/static/sample-signing-pdf.html").toExternalForm();
+        Document doc = html5ParsingService.html5ParseDocument(url, 6000);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        htmlToPdfService.render(doc, url, pdf);
+
+        PDSignature signature = new PDSignature();
+        signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+        signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+        signature.setName("James G Willmore");
+        signature.setReason("Test Signature");
+        signature.setSignDate(Calendar.getInstance());
+
+        byte[] signed = pdfSigningService.signPdf(pdf.toByteArray(), signature);
+
+        try (PDDocument document = PDDocument.load(signed)) {
+            byte[] contents = document.getSignatureDictionaries().get(0).getContents(signed);
+            SignerInformation signer =
+                    new CMSSignedData(contents).getSignerInfos().getSigners().iterator().next();
+
+            assertNotNull(signer.getUnsignedAttributes());
+            assertTrue(
+                    signer.getUnsignedAttributes()
+                                    .get(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken)
+                            != null);
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        REQUESTS.incrementAndGet();
+
+        try (InputStream is = exchange.getRequestBody();
+                OutputStream os = exchange.getResponseBody()) {
+            gate.await(10, TimeUnit.SECONDS);
+            TimeStampRequest request = new TimeStampRequest(IOUtils.toByteArray(is));
+            TimeStampResponse response;
+
+            synchronized (AUTHORITY) {
+                response =
+                        AUTHORITY.generate(
+                                request, BigInteger.valueOf(REQUESTS.get()), new Date());
+            }
+
+            byte[] body = response.getEncoded();
+            exchange.getResponseHeaders().add("Content-Type", "application/timestamp-reply");
+            exchange.sendResponseHeaders(200, body.length);
+            os.write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    /** A self signed time stamping certificate and the response generator using it. */
+    private static TimeStampResponseGenerator authority() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        X500Name name = new X500Name("CN=Test TSA");
+        Date now = new Date();
+        JcaX509v3CertificateBuilder builder =
+                new JcaX509v3CertificateBuilder(
+                        name,
+                        BigInteger.ONE,
+                        new Date(now.getTime() - 60_000),
+                        new Date(now.getTime() + 86_400_000),
+                        name,
+                        keyPair.getPublic());
+        builder.addExtension(
+                Extension.extendedKeyUsage,
+                true,
+                new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+        X509Certificate certificate =
+                new JcaX509CertificateConverter()
+                        .getCertificate(
+                                builder.build(
+                                        new JcaContentSignerBuilder("SHA256WithRSA")
+                                                .build(keyPair.getPrivate())));
+
+        TimeStampTokenGenerator tokenGenerator =
+                new TimeStampTokenGenerator(
+                        new JcaSimpleSignerInfoGeneratorBuilder()
+                                .build("SHA256WithRSA", keyPair.getPrivate(), certificate),
+                        new JcaDigestCalculatorProviderBuilder()
+                                .build()
+                                .get(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256)),
+                        new ASN1ObjectIdentifier("1.2.3.4"));
+        tokenGenerator.addCertificates(new JcaCertStore(Arrays.asList(certificate)));
+        return new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.openhtmltopdf.extend.FSStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+class DocumentSplitterTests {
+    private static final String HEAD =
+            "<head><title>t</title><style>p { color: red; }</style></head>";
+
+    private static final String BASE_URI = "http://example.com/doc/index.html";
+
+    private final W3CDom w3cDom = new W3CDom();
+
+    private final Map<String, String> stylesheets = new HashMap<>();
+
+    private DocumentSplitter splitter(int maxChunks, boolean stampPageNumbers) {
+        return new DocumentSplitter(
+                Arrays.asList("section"), maxChunks, stampPageNumbers, this::stylesheet);
+    }
+
+    private FSStream stylesheet(String url) {
+        String css = stylesheets.get(url);
+
+        return new FSStream() {
+            @Override
+            public InputStream getStream() {
+                return css == null
+                        ? null
+                        : new ByteArrayInputStream(css.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public Reader getReader() {
+                return css == null ? null : new StringReader(css);
+            }
+        };
+    }
+
+    private Document parse(String html) {
+        return w3cDom.fromJsoup(Jsoup.parse(html));
+    }
+
+    private static Element firstBody(Document document) {
+        return (Element) document.getElementsByTagName("body").item(0);
+    }
+
+    private static List<String> ids(Document document, String tagName) {
+        List<String> ids = new ArrayList<>();
+        NodeList elements = document.getElementsByTagName(tagName);
+
+        for (int i = 0; i < elements.getLength(); i++) {
+            ids.add(((Element) elements.item(i)).getAttribute("id"));
+        }
+
+        return ids;
+    }
+
+    @Test
+    void chunksHoldTheHeadAndTheirOwnSlice() {
+        Document document =
+                parse(
+                        "<html>"
+                                + HEAD
+                                + "<body><div id=\"wrap\">"
+                                + "<section id=\"a\"><p>one</p></section>"
+                                + "<section id=\"b\"><p>two</p></section>"
+                                + "<section id=\"c\"><p>three</p></section>"
+                                + "</div></body></html>");
+        List<Document> chunks = splitter(8, false).split(document, BASE_URI);
+
+        assertEquals(3, chunks.size());
+
+        for (int i = 0; i < chunks.size(); i++) {
+            Document chunk = chunks.get(i);
+            assertEquals(1, chunk.getElementsByTagName("title").getLength());
+            assertEquals(1, chunk.getElementsByTagName("style").getLength());
+            assertEquals(Arrays.asList("wrap"), ids(chunk, "div"));
+            assertEquals(
+                    Arrays.asList(String.valueOf((char) ('a' + i))), ids(chunk, "section"));
+            assertEquals(1, chunk.getElementsByTagName("p").getLength());
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c"), ids(document, "section"));
+    }
+
+    @Test
+    void balancesToMaxChunks() {
+        StringBuilder html = new StringBuilder("<html>" + HEAD + "<body>");
+
+        for (int i = 0; i < 10; i++) {
+            html.append("<section id=\"s").append(i).append("\"><p>x</p></section>");
+        }
+
+        List<Document> chunks =
+                splitter(3, false).split(parse(html.append("</body></html>").toString()), BASE_URI);
+        int sections = 0;
+
+        assertEquals(3, chunks.size());
+
+        for (Document chunk : chunks) {
+            sections += chunk.getElementsByTagName("section").getLength();
+        }
+
+        assertEquals(10, sections);
+    }
+
+    @Test
+    void doesNotSplitWithoutBoundaries() {
+        Document document = parse("<html>" + HEAD + "<body><p>one</p><p>two</p></body></html>");
+        List<Document> chunks = splitter(8, false).split(document, BASE_URI);
+
+        assertEquals(1, chunks.size());
+        assertSame(document, chunks.get(0));
+    }
+
+    @Test
+    void pointsCrossChunkLinksAtAnchors() {
+        Document document =
+                parse(
+                        "<html>"
+                                + HEAD
+                                + "<body>"
+                                + "<section id=\"a\"><a id=\"l1\" href=\"#b\">b</a>"
+                                + "<a id=\"l2\" href=\"#a\">a</a>"
+                                + "<a id=\"l3\" href=\"http://example.com/#b\">x</a></section>"
+                                + "<section id=\"b\"><p>two</p></section>"
+                                + "</body></html>");
+        List<Document> chunks = splitter(8, false).split(document, BASE_URI);
+        NodeList links = chunks.get(0).getElementsByTagName("a");
+
+        assertEquals(DocumentSplitter.anchor("b"), ((Element) links.item(0)).getAttribute("href"));
+        assertEquals("#a", ((Element) links.item(1)).getAttribute("href"));
+        assertEquals("http://example.com/#b", ((Element) links.item(2)).getAttribute("href"));
+        assertEquals(
+                "#b", ((Element) document.getElementsByTagName("a").item(0)).getAttribute("href"));
+    }
+
+    @Test
+    void addsAnchorBookmarksForTargets() {
+        Document document =
+                parse(
+                        "<html>"
+                                + HEAD
+                                + "<body>"
+                                + "<bookmarks><bookmark name=\"A\" href=\"#a\">"
+                                + "<bookmark name=\"B\" href=\"#b\"/></bookmark></bookmarks>"
+                                + "<section id=\"a\"><a href=\"#c\">c</a></section>"
+                                + "<section id=\"b\"><p id=\"unused\">two</p></section>"
+                                + "<section id=\"c\"><p>three</p></section>"
+                                + "</body></html>");
+        List<Document> chunks = splitter(8, false).split(document, BASE_URI);
+        Set<String> names = new HashSet<>();
+
+        assertEquals(3, chunks.size());
+
+        for (Document chunk : chunks) {
+            assertEquals(1, chunk.getElementsByTagName("bookmarks").getLength());
+            NodeList bookmarks = chunk.getElementsByTagName("bookmark");
+            assertEquals(1, bookmarks.getLength());
+            Element bookmark = (Element) bookmarks.item(0);
+            assertEquals(
+                    bookmark.getAttribute("href").substring(1),
+                    DocumentSplitter.anchorId(bookmark.getAttribute("name")));
+            names.add(bookmark.getAttribute("name"));
+        }
+
+        assertEquals(
+                new HashSet<>(
+                        Arrays.asList(
+                                DocumentSplitter.anchor("a"),
+                                DocumentSplitter.anchor("b"),
+                                DocumentSplitter.anchor("c"))),
+                names);
+    }
+
+    @Test
+    void anchorsRoundTrip() {
+        String id = "section 2 \u2013 r\u00e9sum\u00e9";
+
+        assertTrue(DocumentSplitter.anchor(id).startsWith(DocumentSplitter.ANCHOR_SCHEME));
+        assertEquals(id, DocumentSplitter.anchorId(DocumentSplitter.anchor(id)));
+        assertNull(DocumentSplitter.anchorId("#" + id));
+    }
+
+    @Test
+    void keepsPageCounterDocumentsWholeUnlessStamped() {
+        String html =
+                "<html><head><style>@page { @bottom-center { content: \"Page \" counter(page)"
+                        + " \" of \" counter(pages); } }</style></head><body>"
+                        + "<section><p>one</p></section><section><p>two</p></section>"
+                        + "</body></html>";
+        Document document = parse(html);
+
+        assertTrue(DocumentSplitter.usesPageCounters(document));
+        assertEquals(1, splitter(8, false).split(document, BASE_URI).size());
+
+        List<Document> chunks = splitter(8, true).split(document, BASE_URI);
+
+        assertEquals(2, chunks.size());
+
+        for (Document chunk : chunks) {
+            String css = chunk.getElementsByTagName("style").item(0).getTextContent();
+            assertFalse(css.contains("counter("), css);
+            assertTrue(css.contains("content: none"), css);
+        }
+
+        assertNotNull(document.getElementsByTagName("style").item(0));
+        assertTrue(DocumentSplitter.usesPageCounters(document));
+    }
+
+    @Test
+    void strayBodyTextIsNotRepeated() {
+        Document document =
+                parse(
+                        "<html>"
+                                + HEAD
+                                + "<body>Intro text <!-- note -->\n<div id=\"wrap\">"
+                                + "<section><p>one</p></section>"
+                                + "<section><p>two</p></section>"
+                                + "<section><p>three</p></section>"
+                                + "</div>Closing text</body></html>");
+        List<Document> chunks = splitter(8, false).split(document, BASE_URI);
+
+        assertEquals(3, chunks.size());
+
+        for (int i = 0; i < chunks.size(); i++) {
+            String text = firstBody(chunks.get(i)).getTextContent();
+            assertEquals(i == 0, text.contains("Intro text"), text);
+            assertEquals(i == 2, text.contains("Closing text"), text);
+            assertEquals(1, chunks.get(i).getElementsByTagName("section").getLength());
+        }
+    }
+
+    @Test
+    void keepsDocumentsWithLinkedPageCountersWhole() {
+        String html =
+                "<html><head><link rel=\"stylesheet\" href=\"print.css\"></head><body>"
+                        + "<section><p>one</p></section><section><p>two</p></section>"
+                        + "</body></html>";
+        Document document = parse(html);
+
+        stylesheets.put("http://example.com/doc/print.css", "p { color: black; }");
+
+        assertEquals(2, splitter(8, false).split(document, BASE_URI).size());
+
+        stylesheets.put(
+                "http://example.com/doc/print.css",
+                "@page { @bottom-center { content: counter(page); } }");
+
+        assertFalse(DocumentSplitter.usesPageCounters(document));
+        assertEquals(1, splitter(8, false).split(document, BASE_URI).size());
+        assertEquals(1, splitter(8, true).split(document, BASE_URI).size());
+    }
+}
@@ -0,0 +1,264 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import net.ljcomputing.htmltopdf.budget.BudgetExceededException;
+import net.ljcomputing.htmltopdf.budget.RenderWatchdog;
+import net.ljcomputing.htmltopdf.model.ConversionRequest;
+import net.ljcomputing.htmltopdf.model.Job;
+import net.ljcomputing.htmltopdf.model.JobStage;
+import net.ljcomputing.htmltopdf.model.RenderBudget;
+import net.ljcomputing.htmltopdf.queue.JobLog;
+import net.ljcomputing.htmltopdf.queue.JobRecord;
+import net.ljcomputing.htmltopdf.service.HtmlToPdfService;
+import net.ljcomputing.htmltopdf.service.PdfSigningService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class JobQueueServiceImplTests {
+    @TempDir Path temp;
+
+    private final HtmlToPdfService htmlToPdfService = mock(HtmlToPdfService.class);
+    private final PdfSigningService pdfSigningService = mock(PdfSigningService.class);
+    private final List<String> rendered = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private JobQueueServiceImpl queue;
+
+    /**
+     * Render by writing the source URL to the output, or fail as the given function decides.
+     *
+     * @param failure the error for a source URL, or null to succeed
+     */
+    private void renderer(Function<String, RuntimeException> failure) {
+        when(htmlToPdfService.convert(any()))
+                .thenAnswer(
+                        invocation -> {
+                            ConversionRequest request = invocation.getArgument(0);
+                            String url = request.getSourceUrl();
+                            calls.computeIfAbsent(url, key -> new AtomicInteger())
+                                    .incrementAndGet();
+                            RuntimeException error = failure.apply(url);
+
+                            if (error != null) {
+                                return CompletableFuture.failedFuture(error);
+                            }
+
+                            Files.write(request.getOutput(), url.getBytes(StandardCharsets.UTF_8));
+                            rendered.add(url);
+                            return CompletableFuture.completedFuture(request.getOutput());
+                        });
+    }
+
+    private JobQueueServiceImpl start() throws Exception {
+        JobQueueServiceImpl service = new JobQueueServiceImpl();
+        ReflectionTestUtils.setField(service, "directory", temp.resolve("queue").toString());
+        ReflectionTestUtils.setField(service, "fsync", false);
+        ReflectionTestUtils.setField(service, "batchSize", 4);
+        ReflectionTestUtils.setField(service, "renderConcurrency", 2);
+        ReflectionTestUtils.setField(service, "signConcurrency", 1);
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 100L);
+        ReflectionTestUtils.setField(service, "compactAfter", 10000L);
+        ReflectionTestUtils.setField(service, "htmlToPdfService", htmlToPdfService);
+        ReflectionTestUtils.setField(service, "pdfSigningService", pdfSigningService);
+        ReflectionTestUtils.setField(service, "signingExecutor", (Executor) Runnable::run);
+        RenderWatchdog watchdog = new RenderWatchdog();
+        ReflectionTestUtils.setField(watchdog, "defaultBudget", RenderBudget.unlimited());
+        ReflectionTestUtils.setField(service, "renderWatchdog", watchdog);
+        service.start();
+        queue = service;
+        return service;
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    private Job job(String name) {
+        Job job = new Job();
+        job.setSourceUrl("file:/" + name + ".html");
+        job.setOutput(temp.resolve(name + ".pdf").toString());
+        return job;
+    }
+
+    private static Job await(JobQueueServiceImpl service, String id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        Job job = service.getJob(id);
+
+        while (!job.getStage().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = service.getJob(id);
+        }
+
+        return job;
+    }
+
+    @Test
+    void rendersSubmittedJobs() throws Exception {
+        renderer(url -> null);
+        JobQueueServiceImpl service = start();
+        List<String> ids = service.submitAll(Arrays.asList(job("a"), job("b"), job("c")));
+
+        for (int i = 0; i < ids.size(); i++) {
+            String name = String.valueOf((char) ('a' + i));
+            Job job = await(service, ids.get(i));
+            Path output = temp.resolve(name + ".pdf");
+
+            assertEquals(JobStage.DONE, job.getStage());
+            assertEquals("file:/" + name + ".html", Files.readString(output));
+            assertFalse(Files.exists(temp.resolve(name + ".pdf.part")));
+        }
+
+        assertEquals(0, service.pending());
+    }
+
+    @Test
+    void returnsSnapshots() throws Exception {
+        renderer(url -> null);
+        JobQueueServiceImpl service = start();
+        Job submitted = job("a");
+        String id = service.submit(submitted);
+        submitted.setOutput("elsewhere.pdf");
+        Job job = await(service, id);
+
+        job.setStage(JobStage.FAILED);
+        job.setOutput("changed.pdf");
+
+        assertEquals(JobStage.DONE, service.getJob(id).getStage());
+        assertEquals(temp.resolve("a.pdf").toString(), service.getJob(id).getOutput());
+        assertTrue(Files.exists(temp.resolve("a.pdf")));
+    }
+
+    @Test
+    void retriesUntilMaxAttempts() throws Exception {
+        renderer(url -> url.contains("broken") ? new IllegalStateException("broken") : null);
+        JobQueueServiceImpl service = start();
+        long started = System.nanoTime();
+        String broken = service.submit(job("broken"));
+        String fine = service.submit(job("fine"));
+        Job failed = await(service, broken);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertEquals(JobStage.FAILED, failed.getStage());
+        // retried after 100 ms, then after 200 ms
+        assertTrue(elapsedMs >= 300, String.valueOf(elapsedMs));
+        assertTrue(failed.getError().contains("broken"), failed.getError());
+        assertEquals(3, calls.get("file:/broken.html").get());
+        assertEquals(JobStage.DONE, await(service, fine).getStage());
+    }
+
+    @Test
+    void signsRenderedOutputThroughTheFile() throws Exception {
+        renderer(url -> null);
+        doAnswer(
+                        invocation -> {
+                            Path pdf = invocation.getArgument(0);
+                            OutputStream os = invocation.getArgument(1);
+                            os.write(Files.readAllBytes(pdf));
+                            os.write(" signed".getBytes(StandardCharsets.UTF_8));
+                            return null;
+                        })
+                .when(pdfSigningService)
+                .signPdf(any(Path.class), any(OutputStream.class), any(), any());
+        JobQueueServiceImpl service = start();
+        Job submitted = job("a");
+        submitted.setSign(true);
+        Job job = await(service, service.submit(submitted));
+
+        assertEquals(JobStage.DONE, job.getStage());
+        assertEquals("file:/a.html signed", Files.readString(temp.resolve("a-signed.pdf")));
+        assertFalse(Files.exists(temp.resolve("a-signed.pdf.part")));
+    }
+
+    @Test
+    void doesNotRetryExhaustedBudgets() throws Exception {
+        renderer(url -> new BudgetExceededException(BudgetExceededException.Limit.PAGES, 1, 2));
+        JobQueueServiceImpl service = start();
+        Job failed = await(service, service.submit(job("long")));
+
+        assertEquals(JobStage.FAILED, failed.getStage());
+        assertEquals(1, calls.get("file:/long.html").get());
+    }
+
+    @Test
+    void resumesAfterCrash() throws Exception {
+        Job interrupted = job("interrupted");
+        interrupted.setId("interrupted");
+        Job crashing = job("crashing");
+        crashing.setId("crashing");
+        Job done = job("done");
+        done.setId("done");
+
+        // a previous process claimed these and died; "crashing" took it down three times
+        try (JobLog log = new JobLog(temp.resolve("queue").resolve("jobs.log"), false)) {
+            log.append(
+                    Arrays.asList(
+                            JobRecord.submit(interrupted),
+                            JobRecord.submit(crashing),
+                            JobRecord.submit(done)));
+            log.append(JobRecord.claim(JobStage.RENDER, Arrays.asList("interrupted", "done")));
+            log.append(JobRecord.checkpoint("done", JobStage.DONE));
+
+            for (int i = 0; i < 3; i++) {
+                log.append(JobRecord.claim(JobStage.RENDER, Arrays.asList("crashing")));
+            }
+        }
+
+        renderer(url -> null);
+        JobQueueServiceImpl service = start();
+        Job resumed = await(service, "interrupted");
+        Job abandoned = service.getJob("crashing");
+
+        assertEquals(JobStage.DONE, resumed.getStage());
+        assertTrue(Files.exists(temp.resolve("interrupted.pdf")));
+        assertEquals(JobStage.FAILED, abandoned.getStage());
+        assertNotNull(abandoned.getError());
+        assertEquals(Arrays.asList("file:/interrupted.html"), rendered);
+        assertEquals(JobStage.DONE, service.getJob("done").getStage());
+    }
+}
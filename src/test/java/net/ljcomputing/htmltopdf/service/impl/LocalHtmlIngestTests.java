@@ -0,0 +1,174 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+
+James G Willmore - LJ Computing - (C) 2023
+*/
+package net.ljcomputing.htmltopdf.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalHtmlIngestTests {
+    private static final String TEXT = "caf\u00e9 cr\u00e8me";
+
+    private static final String BASE_URI = "file:///docs/";
+
+    @TempDir Path directory;
+
+    private static byte[] concat(byte[] prefix, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(prefix, 0, prefix.length);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static String html(String head) {
+        return "<html><head>" + head + "</head><body><p>" + TEXT + "</p></body></html>";
+    }
+
+    @Test
+    void utf8ByteOrderMarkIsDetectedAndSkipped() throws IOException {
+        byte[] bytes =
+                concat(
+                        new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                        html("").getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        assertEquals(StandardCharsets.UTF_8, LocalHtmlIngest.detectCharset(buffer.duplicate()));
+        assertEquals(TEXT, LocalHtmlIngest.parse(buffer, BASE_URI).select("p").text());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void utf16ByteOrderMarksSelectTheByteOrder() throws IOException {
+        ByteBuffer little =
+                ByteBuffer.wrap(
+                        concat(
+                                new byte[] {(byte) 0xFF, (byte) 0xFE},
+                                html("").getBytes(StandardCharsets.UTF_16LE)));
+        ByteBuffer big =
+                ByteBuffer.wrap(
+                        concat(
+                                new byte[] {(byte) 0xFE, (byte) 0xFF},
+                                html("").getBytes(StandardCharsets.UTF_16BE)));
+
+        ByteBuffer sniffed = little.duplicate();
+        assertEquals(StandardCharsets.UTF_16LE, LocalHtmlIngest.detectCharset(sniffed));
+        assertEquals(2, sniffed.position());
+        assertEquals(StandardCharsets.UTF_16BE, LocalHtmlIngest.detectCharset(big.duplicate()));
+        assertEquals(TEXT, LocalHtmlIngest.parse(little, BASE_URI).select("p").text());
+        assertEquals(TEXT, LocalHtmlIngest.parse(big, BASE_URI).select("p").text());
+    }
+
+    @Test
+    void metaCharsetIsSniffedWithoutMovingTheBuffer() throws IOException {
+        ByteBuffer buffer =
+                ByteBuffer.wrap(
+                        html("<meta charset=\"ISO-8859-1\">")
+                                .getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals(StandardCharsets.ISO_8859_1, LocalHtmlIngest.detectCharset(buffer));
+        assertEquals(0, buffer.position());
+        assertEquals(TEXT, LocalHtmlIngest.parse(buffer, BASE_URI).select("p").text());
+    }
+
+    @Test
+    void httpEquivContentTypeIsSniffed() {
+        ByteBuffer buffer =
+                ByteBuffer.wrap(
+                        html(
+                                        "<meta http-equiv=\"Content-Type\""
+                                                + " content=\"text/html; charset=windows-1252\">")
+                                .getBytes(StandardCharsets.ISO_8859_1));
+
+        assertEquals("windows-1252", LocalHtmlIngest.detectCharset(buffer).name());
+    }
+
+    @Test
+    void unknownOrDistantCharsetsFallBackToUtf8() {
+        StringBuilder padding = new StringBuilder("<!--");
+
+        while (padding.length() < 1100) {
+            padding.append("padding ");
+        }
+
+        padding.append("-->");
+        ByteBuffer unknown =
+                ByteBuffer.wrap(
+                        html("<meta charset=\"no-such-charset\">")
+                                .getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer distant =
+                ByteBuffer.wrap(
+                        html(padding + "<meta charset=\"ISO-8859-1\">")
+                                .getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(StandardCharsets.UTF_8, LocalHtmlIngest.detectCharset(unknown));
+        assertEquals(StandardCharsets.UTF_8, LocalHtmlIngest.detectCharset(distant));
+    }
+
+    @Test
+    void filesBelowTheThresholdAreReadOntoTheHeap() throws IOException {
+        Path file = directory.resolve("small.html");
+        Files.write(file, html("").getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer buffer = LocalHtmlIngest.read(file, Files.size(file) + 1);
+
+        assertFalse(buffer instanceof MappedByteBuffer);
+        assertTrue(buffer.hasArray());
+        assertFalse(LocalHtmlIngest.release(buffer));
+        assertEquals(TEXT, LocalHtmlIngest.parse(buffer, BASE_URI).select("p").text());
+    }
+
+    @Test
+    void filesAtTheThresholdAreMappedAndReleased() throws IOException {
+        Path file = directory.resolve("large.html");
+        Files.write(file, html("").getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer buffer = LocalHtmlIngest.read(file, Files.size(file));
+
+        assertTrue(buffer instanceof MappedByteBuffer);
+        assertEquals(Files.size(file), buffer.remaining());
+        assertEquals(TEXT, LocalHtmlIngest.parse(buffer, BASE_URI).select("p").text());
+        assertTrue(LocalHtmlIngest.release(buffer));
+    }
+
+    @Test
+    void parsingAFileReleasesTheMapping() throws IOException {
+        Path file = directory.resolve("mapped.html");
+        Files.write(file, html("").getBytes(StandardCharsets.UTF_8));
+
+        Document document = LocalHtmlIngest.parse(file, 0, BASE_URI);
+
+        assertEquals(TEXT, document.select("p").text());
+        assertEquals(BASE_URI, document.baseUri());
+        Files.delete(file);
+        assertFalse(Files.exists(file));
+    }
+}